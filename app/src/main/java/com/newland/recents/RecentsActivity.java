@@ -1,50 +1,54 @@
 package com.newland.recents;
 
 import android.app.Activity;
-import android.content.Intent;
 import android.os.Bundle;
-import android.view.View;
-import android.widget.Toast;
 
-import com.newland.recents.loader.TaskLoader;
-import com.newland.recents.manager.TaskManager;
-import com.newland.recents.model.Task;
-import com.newland.recents.views.RecentsView;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 
-import java.util.List;
-
-public class RecentsActivity extends Activity implements TaskLoader.TaskLoadListener, RecentsView.RecentsViewCallbacks {
+/**
+ * 以Activity方式显示最近任务，界面逻辑由RecentsViewController实现。
+ * 系统窗口方式关闭或无法创建窗口时使用
+ */
+public class RecentsActivity extends Activity implements RecentsViewController.Host {
     private static RecentsActivity sInstance;
 
-    private RecentsView mRecentsView;
-    private View mEmptyView;
-    private TaskLoader mTaskLoader;
-    private TaskManager mTaskManager;
+    private RecentsViewController mViewController;
+    // 新创建的Activity第一次显示，之后从待机状态恢复显示
+    private boolean mColdStart;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.recents_activity);
+        mColdStart = true;
 
-        mRecentsView = findViewById(R.id.recents_view);
-        mEmptyView = findViewById(R.id.empty_view);
-        mRecentsView.setCallbacks(this);
-
-        mTaskLoader = new TaskLoader(this);
-        mTaskManager = new TaskManager(this);
+        mViewController = new RecentsViewController(this, getWindow().getDecorView(), this);
     }
 
     @Override
     protected void onResume() {
         super.onResume();
         sInstance = this;
-        mTaskLoader.loadTasks(this);
+        RecentsController.getInstance(this).trackFirstDraw(getWindow().getDecorView(),
+                mColdStart ? RecentsController.SHOW_COLD : RecentsController.SHOW_STANDBY);
+        mColdStart = false;
+        mViewController.onShown();
+        RecentsController.getInstance(this).onRecentsShown();
     }
 
     @Override
     protected void onPause() {
         super.onPause();
         sInstance = null;
+        RecentsController.getInstance(this).onRecentsHiding();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        mViewController.onHidden(!isFinishing());
+        RecentsController.getInstance(this).onRecentsHidden();
     }
 
     public static boolean isVisible() {
@@ -55,52 +59,31 @@ public class RecentsActivity extends Activity implements TaskLoader.TaskLoadList
         return sInstance;
     }
 
+    /**
+     * 开启待机时只把Activity移到后台，保留视图和已加载的任务，下次显示时不需要重新创建和inflate
+     */
     public void hideRecents() {
-        finish();
-    }
-
-    @Override
-    public void onTasksLoaded(List<Task> tasks) {
-        if (tasks.isEmpty()) {
-            mRecentsView.setVisibility(View.GONE);
-            mEmptyView.setVisibility(View.VISIBLE);
-        } else {
-            mRecentsView.setVisibility(View.VISIBLE);
-            mEmptyView.setVisibility(View.GONE);
-            mRecentsView.setTasks(tasks);
-            for (Task task : tasks) {
-                mTaskLoader.loadTaskThumbnail(task, this);
-            }
-        }
-    }
-
-    @Override
-    public void onTaskThumbnailLoaded(Task task, android.graphics.Bitmap thumbnail) {
-        if (mRecentsView != null) {
-            com.newland.recents.views.TaskView taskView = mRecentsView.findTaskView(task.key.id);
-            if (taskView != null) {
-                taskView.setThumbnail(thumbnail);
-            }
+        if (RecentsController.getInstance(this).isStandbyEnabled() && moveTaskToBack(true)) {
+            return;
         }
+        finish();
     }
 
     @Override
-    public void onTaskLaunched(Task task) {
-        if (!mTaskManager.startTask(task)) {
-            Toast.makeText(this, R.string.recents_launch_error, Toast.LENGTH_SHORT).show();
-        }
+    public void onBackPressed() {
+        hideRecents();
     }
 
     @Override
-    public void onTaskDismissed(Task task) {
-        if (!mTaskManager.removeTask(task)) {
-            Toast.makeText(this, R.string.recents_remove_error, Toast.LENGTH_SHORT).show();
-        }
+    public void onTaskLaunched() {
+        // 目标任务切换到前台后Activity随之onStop，不需要额外处理
     }
 
     @Override
-    public void onAllTasksRemoved() {
-        mRecentsView.setVisibility(View.GONE);
-        mEmptyView.setVisibility(View.VISIBLE);
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        RecentsController.getInstance(this).dump(prefix, writer);
+        ((RecentsApp) getApplication()).getTaskRepository().getLaunchLatencyTracker()
+                .dump(prefix, writer);
     }
-}
\ No newline at end of file
+}
@@ -4,20 +4,48 @@ import android.app.Application;
 import android.content.Context;
 import android.util.Log;
 
-import com.newland.recents.utils.SystemPropertiesProxy;
+import com.newland.recents.loader.TaskRepository;
+import com.newland.recents.utils.SystemApiBridge;
+import com.newland.recents.utils.RecentsConfig;
+import com.newland.recents.views.TaskViewPool;
 
 public class RecentsApp extends Application {
     private static final String TAG = "RecentsApp";
     private static RecentsApp sInstance;
 
+    private TaskRepository mTaskRepository;
+
     @Override
     public void onCreate() {
         super.onCreate();
         sInstance = this;
         Log.d(TAG, "Recents application started");
 
-        // 初始化系统属性代理
-        SystemPropertiesProxy.getInstance();
+        // 读取可调参数，之后系统属性变化时自动更新
+        RecentsConfig.init(this);
+        // 启动时解析隐藏API并记录设备支持的能力
+        SystemApiBridge.getInstance();
+        // 空闲时预先创建卡片视图，首次显示时直接取用
+        TaskViewPool.getInstance(this).warmUp();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (mTaskRepository != null) {
+            mTaskRepository.trimMemory(level);
+        }
+        TaskViewPool.getInstance(this).trimMemory(level);
+    }
+
+    /**
+     * 进程级的任务仓库，首次使用时创建，只能在主线程调用
+     */
+    public TaskRepository getTaskRepository() {
+        if (mTaskRepository == null) {
+            mTaskRepository = new TaskRepository(this);
+        }
+        return mTaskRepository;
     }
 
     public static RecentsApp getInstance() {
@@ -2,20 +2,107 @@ package com.newland.recents;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.newland.recents.loader.TaskLoadPlan;
+import com.newland.recents.loader.TaskLoader;
+import com.newland.recents.manager.LatencyStats;
+import com.newland.recents.utils.RecentsConfig;
+import com.newland.recents.views.TaskViewPool;
+
+import java.io.PrintWriter;
 
 public class RecentsController {
+    private static final String TAG = "RecentsController";
+    // 超过这个时间才显示出来的不计入统计
+    private static final long MAX_SHOW_LATENCY_MS = 5000;
+    // 预加载时解码缩略图的卡片数量，即居中卡片和右侧的卡片
+    private static final int PRELOAD_THUMBNAIL_COUNT = 3;
+
+    // 界面的显示方式，用于分别统计显示耗时
+    public static final int SHOW_COLD = 0;
+    public static final int SHOW_STANDBY = 1;
+    public static final int SHOW_OVERLAY = 2;
+
     private static RecentsController sInstance;
     private final Context mContext;
 
     private Intent mHomeIntent;
 
+    // 预加载状态，只在主线程访问
+    private TaskLoadPlan mPreloadPlan;
+    private boolean mPreloading;
+    private TaskLoader.PreloadListener mPendingPlanListener;
+
+    private final boolean mStandbyEnabled;
+    // 系统窗口方式，窗口创建失败后不再尝试
+    private final boolean mOverlayEnabled;
+    private RecentsOverlay mOverlay;
+    private boolean mOverlayUnavailable;
+
+    // 从showRecents到界面第一帧绘制的耗时，按显示方式分别统计
+    private final LatencyStats mColdShowStats = new LatencyStats("cold");
+    private final LatencyStats mStandbyShowStats = new LatencyStats("standby");
+    private final LatencyStats mOverlayShowStats = new LatencyStats("overlay");
+    private long mShowRequestTime;
+
+    // 显示和隐藏的状态机，只在主线程访问
+    private final RecentsStateMachine mStateMachine;
+
     private RecentsController(Context context) {
         mContext = RecentsApp.getContext();
+        // 显示方式在进程启动时确定
+        RecentsConfig config = RecentsConfig.get();
+        mStandbyEnabled = config.standbyEnabled;
+        mOverlayEnabled = config.overlayEnabled;
 
         mHomeIntent = new Intent(Intent.ACTION_MAIN, null);
         mHomeIntent.addCategory(Intent.CATEGORY_HOME);
         mHomeIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK |
                 Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
+
+        final Handler handler = new Handler(Looper.getMainLooper());
+        mStateMachine = new RecentsStateMachine(new RecentsStateMachine.Callbacks() {
+            @Override
+            public boolean startShow() {
+                return RecentsController.this.startShow();
+            }
+
+            @Override
+            public void startHide() {
+                RecentsController.this.startHide();
+            }
+
+            @Override
+            public boolean isUiShowing() {
+                return RecentsController.this.isUiShowing();
+            }
+
+            @Override
+            public void onTransitionTimedOut(int state) {
+                Log.w(TAG, "Transition timed out in state " + state);
+            }
+        }, new RecentsStateMachine.Scheduler() {
+            @Override
+            public long uptimeMillis() {
+                return SystemClock.uptimeMillis();
+            }
+
+            @Override
+            public void postDelayed(Runnable runnable, long delayMs) {
+                handler.postDelayed(runnable, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable runnable) {
+                handler.removeCallbacks(runnable);
+            }
+        });
     }
 
     public static synchronized RecentsController getInstance(Context context) {
@@ -26,7 +113,53 @@ public class RecentsController {
     }
 
     public void showRecents() {
-        if (RecentsActivity.isVisible()) return;
+        mStateMachine.show();
+    }
+
+    public void hideRecents() {
+        mStateMachine.hide();
+    }
+
+    public void toggleRecents() {
+        if (!mStateMachine.toggle()) {
+            Log.d(TAG, "Toggle ignored, repeated within "
+                    + RecentsStateMachine.TOGGLE_DEBOUNCE_MS + "ms");
+        }
+    }
+
+    /**
+     * 界面已经显示，由RecentsActivity的onResume或RecentsOverlay调用
+     */
+    public void onRecentsShown() {
+        mStateMachine.onShown();
+    }
+
+    /**
+     * 界面开始隐藏，例如按返回键或切换到任务
+     */
+    public void onRecentsHiding() {
+        mStateMachine.onHiding();
+    }
+
+    /**
+     * 界面已经不可见
+     */
+    public void onRecentsHidden() {
+        mStateMachine.onHidden();
+    }
+
+    /**
+     * 由状态机调用，此时已处于显示过渡中
+     *
+     * @return 无法启动界面时返回false
+     */
+    private boolean startShow() {
+        mShowRequestTime = SystemClock.uptimeMillis();
+        RecentsOverlay overlay = getOverlay();
+        if (overlay != null) {
+            overlay.show();
+            return true;
+        }
 
         mContext.startActivity(mHomeIntent);
 
@@ -44,22 +177,138 @@ public class RecentsController {
             
             // Using startActivity as we don't have system permissions for startActivityAsUser
             mContext.startActivity(intent);
+            return true;
         } catch (Exception e) {
-            android.util.Log.e("RecentsController", "Failed to launch RecentsActivity", e);
+            Log.e(TAG, "Failed to launch RecentsActivity", e);
+            return false;
         }
     }
 
-    public void hideRecents() {
+    /**
+     * 由状态机调用，此时已处于隐藏过渡中
+     */
+    private void startHide() {
+        if (mOverlay != null && mOverlay.isShowing()) {
+            mOverlay.hide();
+        }
         if (RecentsActivity.isVisible()) {
             RecentsActivity.getInstance().hideRecents();
         }
     }
 
-    public void toggleRecents() {
-        if (RecentsActivity.isVisible()) {
-            hideRecents();
-        } else {
-            showRecents();
+    /**
+     * 在RecentsActivity启动前预先加载任务列表和前几张卡片的缩略图，参考SystemUI的preloadRecents
+     */
+    public void preloadRecents() {
+        if (mStateMachine.getState() != RecentsStateMachine.STATE_HIDDEN || mPreloading) return;
+
+        mPreloading = true;
+        mPreloadPlan = null;
+        // 卡片视图可能在内存紧张时被丢弃，预加载时补足
+        TaskViewPool.getInstance(mContext).warmUp();
+        // 系统窗口在第一次显示前创建好
+        getOverlay();
+        TaskLoader loader = RecentsApp.getInstance().getTaskRepository().getTaskLoader();
+        loader.preloadTasks(PRELOAD_THUMBNAIL_COUNT, new TaskLoader.PreloadListener() {
+            @Override
+            public void onTasksPreloaded(TaskLoadPlan plan) {
+                mPreloading = false;
+                if (mPendingPlanListener != null) {
+                    TaskLoader.PreloadListener listener = mPendingPlanListener;
+                    mPendingPlanListener = null;
+                    listener.onTasksPreloaded(plan);
+                } else {
+                    mPreloadPlan = plan;
+                }
+            }
+        });
+    }
+
+    /**
+     * 取出预加载的结果，预加载仍在进行时会在完成后回调
+     *
+     * @return 没有可用的预加载结果时返回false，调用方需要自行加载
+     */
+    public boolean takePreloadPlan(TaskLoader.PreloadListener listener) {
+        if (mPreloading) {
+            mPendingPlanListener = listener;
+            return true;
+        }
+        TaskLoadPlan plan = mPreloadPlan;
+        mPreloadPlan = null;
+        if (plan == null || plan.isStale()) {
+            return false;
+        }
+        listener.onTasksPreloaded(plan);
+        return true;
+    }
+
+    public boolean isStandbyEnabled() {
+        return mStandbyEnabled;
+    }
+
+    /**
+     * 在界面显示后的第一帧绘制时记录显示耗时
+     *
+     * @param showMode SHOW_COLD、SHOW_STANDBY或SHOW_OVERLAY
+     */
+    public void trackFirstDraw(final View root, final int showMode) {
+        root.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean mReported;
+
+            @Override
+            public void onDraw() {
+                if (mReported) return;
+                mReported = true;
+                onRecentsDrawn(showMode);
+                final ViewTreeObserver.OnDrawListener listener = this;
+                // 绘制过程中不能移除监听
+                root.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        root.getViewTreeObserver().removeOnDrawListener(listener);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRecentsDrawn(int showMode) {
+        if (mShowRequestTime == 0) return;
+        long latencyMs = SystemClock.uptimeMillis() - mShowRequestTime;
+        mShowRequestTime = 0;
+        if (latencyMs > MAX_SHOW_LATENCY_MS) return;
+        LatencyStats stats = showMode == SHOW_OVERLAY ? mOverlayShowStats
+                : showMode == SHOW_COLD ? mColdShowStats : mStandbyShowStats;
+        stats.add(latencyMs);
+        Log.d(TAG, "Show latency (" + stats.getName() + "): " + latencyMs + "ms");
+    }
+
+    /**
+     * 开启了系统窗口方式时返回已创建的窗口，窗口不可用时返回null，改用RecentsActivity
+     */
+    private RecentsOverlay getOverlay() {
+        if (!mOverlayEnabled || mOverlayUnavailable) return null;
+        if (mOverlay == null) {
+            mOverlay = new RecentsOverlay(mContext);
+        }
+        if (!mOverlay.create()) {
+            mOverlayUnavailable = true;
+            mOverlay = null;
         }
+        return mOverlay;
+    }
+
+    private boolean isUiShowing() {
+        return RecentsActivity.isVisible() || (mOverlay != null && mOverlay.isShowing());
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.print(prefix);
+        pw.println("RecentsController show latency (showRecents to first frame), standby="
+                + mStandbyEnabled + " overlay=" + (mOverlay != null) + ":");
+        mColdShowStats.dump(prefix + "  ", pw);
+        mStandbyShowStats.dump(prefix + "  ", pw);
+        mOverlayShowStats.dump(prefix + "  ", pw);
     }
 }
\ No newline at end of file
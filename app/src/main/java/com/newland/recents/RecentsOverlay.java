@@ -0,0 +1,138 @@
+package com.newland.recents;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.PixelFormat;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.KeyEvent;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.WindowManager;
+import android.widget.FrameLayout;
+
+import com.newland.recents.utils.RecentsConfig;
+
+/**
+ * 以系统窗口方式显示最近任务。窗口预先创建并隐藏，显示和隐藏只切换可见性并播放淡入淡出动画，
+ * 不经过Activity的启动和窗口切换。窗口创建失败时由RecentsController改用RecentsActivity。
+ * 只在主线程使用。
+ */
+class RecentsOverlay implements RecentsViewController.Host {
+    private static final String TAG = "RecentsOverlay";
+
+    private final Context mContext;
+    private final WindowManager mWindowManager;
+
+    private FrameLayout mRoot;
+    private RecentsViewController mViewController;
+    private boolean mAttached;
+    private boolean mShowing;
+
+    // 按Home键或系统要求关闭对话框时隐藏
+    private final BroadcastReceiver mCloseReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            hide();
+        }
+    };
+
+    RecentsOverlay(Context context) {
+        mContext = new ContextThemeWrapper(context.getApplicationContext(), R.style.RecentsTheme);
+        mWindowManager = (WindowManager) mContext.getSystemService(Context.WINDOW_SERVICE);
+    }
+
+    /**
+     * 创建并添加隐藏的窗口，已经创建时直接返回
+     *
+     * @return 窗口不可用时返回false
+     */
+    boolean create() {
+        if (mAttached) return true;
+        FrameLayout root = new FrameLayout(mContext) {
+            @Override
+            public boolean dispatchKeyEvent(KeyEvent event) {
+                if (event.getKeyCode() == KeyEvent.KEYCODE_BACK) {
+                    if (event.getAction() == KeyEvent.ACTION_UP && !event.isCanceled()) {
+                        hide();
+                    }
+                    return true;
+                }
+                return super.dispatchKeyEvent(event);
+            }
+        };
+        root.setBackgroundResource(R.color.recents_background);
+        LayoutInflater.from(mContext).inflate(R.layout.recents_activity, root, true);
+        root.setVisibility(View.GONE);
+
+        WindowManager.LayoutParams lp = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.MATCH_PARENT,
+                WindowManager.LayoutParams.TYPE_SYSTEM_DIALOG,
+                WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN
+                        | WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED,
+                PixelFormat.TRANSLUCENT);
+        lp.setTitle("Recents");
+        // 由视图自己播放动画
+        lp.windowAnimations = 0;
+        try {
+            mWindowManager.addView(root, lp);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to add recents window", e);
+            return false;
+        }
+        mRoot = root;
+        mViewController = new RecentsViewController(mContext, root, this);
+        mAttached = true;
+        return true;
+    }
+
+    boolean isShowing() {
+        return mShowing;
+    }
+
+    void show() {
+        if (!mAttached || mShowing) return;
+        mShowing = true;
+        mContext.registerReceiver(mCloseReceiver,
+                new IntentFilter(Intent.ACTION_CLOSE_SYSTEM_DIALOGS));
+        mRoot.animate().cancel();
+        mRoot.setAlpha(0f);
+        mRoot.setVisibility(View.VISIBLE);
+        RecentsController.getInstance(mContext).trackFirstDraw(mRoot,
+                RecentsController.SHOW_OVERLAY);
+        mViewController.onShown();
+        mRoot.animate().alpha(1f).setDuration(RecentsConfig.get().overlayAnimationMs).start();
+        RecentsController.getInstance(mContext).onRecentsShown();
+    }
+
+    void hide() {
+        if (!mShowing) return;
+        mShowing = false;
+        mContext.unregisterReceiver(mCloseReceiver);
+        RecentsController.getInstance(mContext).onRecentsHiding();
+        mRoot.animate().cancel();
+        long duration = RecentsConfig.get().overlayAnimationMs;
+        mRoot.animate().alpha(0f).setDuration(duration).withEndAction(new Runnable() {
+            @Override
+            public void run() {
+                mRoot.setVisibility(View.GONE);
+                mViewController.onHidden(true);
+                RecentsController.getInstance(mContext).onRecentsHidden();
+            }
+        }).start();
+    }
+
+    @Override
+    public void onTaskLaunched() {
+        // 目标任务在窗口下方切换
+        hide();
+    }
+
+    @Override
+    public boolean isDestroyed() {
+        return !mAttached;
+    }
+}
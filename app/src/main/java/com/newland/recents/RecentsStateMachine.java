@@ -0,0 +1,165 @@
+package com.newland.recents;
+
+/**
+ * 最近任务界面显示和隐藏的状态机。显示和隐藏命令先转换为目标状态，过渡中到达的命令等过渡完成后再处理，
+ * 按键重复的切换命令直接丢弃，过渡超时后按界面的实际状态恢复。
+ * 不依赖Android，时钟和定时器由Scheduler提供，只在主线程使用。
+ */
+class RecentsStateMachine {
+
+    static final int STATE_HIDDEN = 0;
+    static final int STATE_SHOWING = 1;
+    static final int STATE_VISIBLE = 2;
+    static final int STATE_HIDING = 3;
+    private static final int TARGET_NONE = 0;
+    private static final int TARGET_VISIBLE = 1;
+    private static final int TARGET_HIDDEN = 2;
+    // 在这个时间内重复到达的切换命令视为按键重复，直接丢弃
+    static final long TOGGLE_DEBOUNCE_MS = 300;
+    // 显示或隐藏超过这个时间还没有完成时按界面的实际状态恢复
+    static final long TRANSITION_TIMEOUT_MS = 3000;
+
+    interface Callbacks {
+        /** 开始显示界面，无法显示时返回false */
+        boolean startShow();
+
+        /** 开始隐藏界面 */
+        void startHide();
+
+        /** 界面实际是否可见 */
+        boolean isUiShowing();
+
+        /** 过渡超时，state为超时时的状态 */
+        void onTransitionTimedOut(int state);
+    }
+
+    interface Scheduler {
+        long uptimeMillis();
+
+        void postDelayed(Runnable runnable, long delayMs);
+
+        void removeCallbacks(Runnable runnable);
+    }
+
+    private final Callbacks mCallbacks;
+    private final Scheduler mScheduler;
+
+    private int mState = STATE_HIDDEN;
+    // 过渡完成后要进入的状态，多个命令只保留最后一个
+    private int mPendingTarget = TARGET_NONE;
+    // 上一次接受的切换命令的时间，还没有时为null
+    private Long mLastToggleTime;
+    private final Runnable mTransitionTimeout = new Runnable() {
+        @Override
+        public void run() {
+            mCallbacks.onTransitionTimedOut(mState);
+            setState(mCallbacks.isUiShowing() ? STATE_VISIBLE : STATE_HIDDEN);
+            applyPendingTarget();
+        }
+    };
+
+    RecentsStateMachine(Callbacks callbacks, Scheduler scheduler) {
+        mCallbacks = callbacks;
+        mScheduler = scheduler;
+    }
+
+    int getState() {
+        return mState;
+    }
+
+    void show() {
+        requestVisible(true);
+    }
+
+    void hide() {
+        requestVisible(false);
+    }
+
+    /**
+     * @return 命令因按键重复被丢弃时返回false
+     */
+    boolean toggle() {
+        long now = mScheduler.uptimeMillis();
+        if (mLastToggleTime != null && now - mLastToggleTime < TOGGLE_DEBOUNCE_MS) {
+            return false;
+        }
+        mLastToggleTime = now;
+        requestVisible(!isTargetVisible());
+        return true;
+    }
+
+    /**
+     * 界面已经显示
+     */
+    void onShown() {
+        setState(STATE_VISIBLE);
+        applyPendingTarget();
+    }
+
+    /**
+     * 界面开始隐藏，例如按返回键或切换到任务
+     */
+    void onHiding() {
+        if (mState == STATE_VISIBLE) {
+            setState(STATE_HIDING);
+        }
+    }
+
+    /**
+     * 界面已经不可见
+     */
+    void onHidden() {
+        setState(STATE_HIDDEN);
+        applyPendingTarget();
+    }
+
+    private boolean isTargetVisible() {
+        if (mPendingTarget != TARGET_NONE) {
+            return mPendingTarget == TARGET_VISIBLE;
+        }
+        return mState == STATE_SHOWING || mState == STATE_VISIBLE;
+    }
+
+    private void requestVisible(boolean visible) {
+        switch (mState) {
+            case STATE_HIDDEN:
+                mPendingTarget = TARGET_NONE;
+                if (visible) {
+                    setState(STATE_SHOWING);
+                    if (!mCallbacks.startShow()) {
+                        setState(STATE_HIDDEN);
+                    }
+                }
+                break;
+            case STATE_VISIBLE:
+                mPendingTarget = TARGET_NONE;
+                if (!visible) {
+                    setState(STATE_HIDING);
+                    mCallbacks.startHide();
+                }
+                break;
+            default:
+                // 过渡中不重复启动，与过渡的方向相同时丢弃，否则等过渡完成后再执行
+                boolean transitionVisible = mState == STATE_SHOWING;
+                mPendingTarget = visible == transitionVisible ? TARGET_NONE
+                        : visible ? TARGET_VISIBLE : TARGET_HIDDEN;
+                break;
+        }
+    }
+
+    private void applyPendingTarget() {
+        int target = mPendingTarget;
+        mPendingTarget = TARGET_NONE;
+        if (target != TARGET_NONE) {
+            requestVisible(target == TARGET_VISIBLE);
+        }
+    }
+
+    private void setState(int state) {
+        mState = state;
+        mScheduler.removeCallbacks(mTransitionTimeout);
+        if (state == STATE_SHOWING || state == STATE_HIDING) {
+            mScheduler.postDelayed(mTransitionTimeout, TRANSITION_TIMEOUT_MS);
+        }
+    }
+}
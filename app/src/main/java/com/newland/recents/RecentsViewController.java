@@ -0,0 +1,229 @@
+package com.newland.recents;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.Toast;
+
+import com.newland.recents.loader.TaskListDiff;
+import com.newland.recents.loader.TaskLoadPlan;
+import com.newland.recents.loader.TaskLoader;
+import com.newland.recents.loader.TaskRepository;
+import com.newland.recents.manager.LaunchLatencyTracker;
+import com.newland.recents.manager.TaskManager;
+import com.newland.recents.manager.TaskRemovalQueue;
+import com.newland.recents.model.Task;
+import com.newland.recents.views.RecentsView;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 最近任务界面的逻辑：加载任务和缩略图、启动和删除任务、空状态和清除全部。
+ * 界面由recents_activity布局创建，可以放在RecentsActivity中，也可以放在RecentsOverlay的系统窗口中，
+ * 两种显示方式通过Host区分。只在主线程使用。
+ */
+public class RecentsViewController implements TaskLoader.TaskLoadListener,
+        RecentsView.RecentsViewCallbacks, TaskRemovalQueue.Callback {
+
+    public interface Host {
+        /** 已经开始切换到任务 */
+        void onTaskLaunched();
+
+        /** 界面已经销毁，后台删除的结果不再更新界面 */
+        boolean isDestroyed();
+    }
+
+    private final Context mContext;
+    private final Host mHost;
+    private final RecentsView mRecentsView;
+    private final View mEmptyView;
+    private final View mClearAllButton;
+    private final TaskLoader mTaskLoader;
+    private final TaskManager mTaskManager;
+    private final TaskRemovalQueue mTaskRemovalQueue;
+    private final LaunchLatencyTracker mLaunchLatencyTracker;
+    private final Runnable mLaunchAnimationStarted = new Runnable() {
+        @Override
+        public void run() {
+            mLaunchLatencyTracker.onLaunchAnimationStarted();
+        }
+    };
+
+    /**
+     * @param root 由recents_activity布局创建的界面
+     */
+    public RecentsViewController(Context context, View root, Host host) {
+        mContext = context.getApplicationContext();
+        mHost = host;
+        mRecentsView = root.findViewById(R.id.recents_view);
+        mEmptyView = root.findViewById(R.id.empty_view);
+        mClearAllButton = root.findViewById(R.id.clear_all_button);
+        mRecentsView.setCallbacks(this);
+        mClearAllButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                mRecentsView.dismissAllTasks();
+            }
+        });
+
+        // 加载器和缓存由进程级的仓库持有，界面销毁后仍然保留
+        TaskRepository repository = RecentsApp.getInstance().getTaskRepository();
+        mTaskLoader = repository.getTaskLoader();
+        mTaskManager = repository.getTaskManager();
+        mTaskRemovalQueue = repository.getTaskRemovalQueue();
+        mLaunchLatencyTracker = repository.getLaunchLatencyTracker();
+
+        // 第一帧直接绘制上一次的快照，随后在onShown中用后台加载的结果增量更新
+        List<Task> snapshot = repository.getSnapshot();
+        if (!snapshot.isEmpty()) {
+            mRecentsView.setTasks(snapshot);
+        }
+    }
+
+    public RecentsView getRecentsView() {
+        return mRecentsView;
+    }
+
+    /**
+     * 界面显示时调用，使用预加载的结果或重新加载任务列表
+     */
+    public void onShown() {
+        boolean preloaded = RecentsController.getInstance(mContext).takePreloadPlan(
+                new TaskLoader.PreloadListener() {
+                    @Override
+                    public void onTasksPreloaded(TaskLoadPlan plan) {
+                        onTasksLoaded(mTaskLoader.applyLoadPlan(plan));
+                    }
+                });
+        if (!preloaded) {
+            mTaskLoader.loadTasks(this);
+        }
+    }
+
+    /**
+     * 界面不可见后调用
+     *
+     * @param retained 界面是否保留到下次显示
+     */
+    public void onHidden(boolean retained) {
+        if (retained) {
+            // 隐藏期间保留卡片和已加载的状态，下次显示时从最近的任务开始
+            mRecentsView.resetScroll();
+        }
+        // 界面已不可见，未完成的缩略图加载不再需要
+        mTaskLoader.cancelAllThumbnails();
+    }
+
+    @Override
+    public void onTasksLoaded(TaskListDiff diff) {
+        List<Task> tasks = diff.tasks;
+        mRecentsView.applyDiff(diff);
+        for (Task task : diff.removed) {
+            mTaskLoader.cancelTaskThumbnail(task);
+        }
+        showEmptyView(tasks.isEmpty());
+        // 只为还没有缩略图的任务发起加载，已有请求会更新其位置
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task.thumbnail == null) {
+                mTaskLoader.loadTaskThumbnail(task, i, this);
+            }
+        }
+    }
+
+    @Override
+    public void onThumbnailsLoaded(List<Task> tasks) {
+        for (Task task : tasks) {
+            mRecentsView.onTaskThumbnailLoaded(task);
+        }
+    }
+
+    @Override
+    public void onTaskLaunched(Task task) {
+        long tapTime = SystemClock.uptimeMillis();
+        int method = mTaskManager.launchTask(task,
+                mRecentsView.createLaunchOptions(task, mLaunchAnimationStarted));
+        if (method == TaskManager.LAUNCH_FAILED) {
+            Toast.makeText(mContext, R.string.recents_launch_error, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // 动画开始的回调通过Handler发送，一定在这之后
+        mLaunchLatencyTracker.onLaunchStarted(method, tapTime);
+        mHost.onTaskLaunched();
+    }
+
+    @Override
+    public void onTaskDismissed(Task task) {
+        mTaskLoader.cancelTaskThumbnail(task);
+        // 卡片已经移除，系统服务调用在后台执行，失败时再把卡片放回
+        mTaskLoader.onTasksRemoving(Collections.singletonList(task));
+        mTaskRemovalQueue.remove(task, this);
+    }
+
+    @Override
+    public void onTasksRemoved(List<Task> removed, List<Task> failed) {
+        // 任务列表属于进程，界面已经销毁时也要更新
+        mTaskLoader.onTasksRemoved(removed, failed);
+        if (!mHost.isDestroyed()) {
+            mRecentsView.onTasksRemoved(removed);
+        }
+        if (failed.isEmpty()) return;
+        // 一批删除只提示一次，界面已经销毁时也要提示
+        Toast.makeText(mContext, R.string.recents_remove_error, Toast.LENGTH_SHORT).show();
+        if (mHost.isDestroyed()) return;
+        for (Task task : failed) {
+            int index = mRecentsView.restoreTask(task);
+            if (task.thumbnail == null) {
+                mTaskLoader.loadTaskThumbnail(task, index, this);
+            }
+        }
+        showEmptyView(false);
+    }
+
+    @Override
+    public void onTasksDismissed(List<Task> tasks) {
+        for (Task task : tasks) {
+            mTaskLoader.cancelTaskThumbnail(task);
+        }
+        // 整批在后台一次删除，只回调一次结果
+        mTaskLoader.onTasksRemoving(tasks);
+        mTaskRemovalQueue.removeAll(tasks, this);
+    }
+
+    @Override
+    public void onAllTasksRemoved() {
+        showEmptyView(true);
+    }
+
+    @Override
+    public void onCenteredTaskChanged(int index) {
+        mTaskLoader.setThumbnailFocus(index);
+    }
+
+    @Override
+    public void onFlingStarted(int fromIndex, int toIndex) {
+        mTaskLoader.prefetchThumbnailsForFling(fromIndex, toIndex);
+    }
+
+    @Override
+    public void onFlingEnded() {
+        mTaskLoader.clearFlingPrefetch();
+    }
+
+    @Override
+    public void onTaskSizeChanged(int width, int height) {
+        mTaskLoader.setThumbnailTargetSize(width, height);
+    }
+
+    @Override
+    public void onTaskViewRemoved(Task task) {
+        mTaskLoader.releaseThumbnail(task);
+    }
+
+    private void showEmptyView(boolean empty) {
+        mRecentsView.setVisibility(empty ? View.GONE : View.VISIBLE);
+        mClearAllButton.setVisibility(empty ? View.GONE : View.VISIBLE);
+        mEmptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+    }
+}
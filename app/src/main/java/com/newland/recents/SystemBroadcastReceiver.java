@@ -3,8 +3,12 @@ package com.newland.recents;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.util.Log;
 
+import com.newland.recents.loader.PackageMetadataStore;
+import com.newland.recents.utils.RecentsConfig;
+
 /**
  * System broadcast receiver for handling recents actions
  */
@@ -16,6 +20,11 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
     public static final String ACTION_SHOW = "com.android.systemui.recents.ACTION_SHOW";
     public static final String ACTION_HIDE = "com.android.systemui.recents.ACTION_HIDE";
     public static final String ACTION_TOGGLE = "com.android.systemui.recents.ACTION_TOGGLE";
+    // 导航栏最近任务键按下时发送，在抬起触发ACTION_SHOW/TOGGLE前预加载
+    public static final String ACTION_PRELOAD = "com.android.systemui.recents.ACTION_PRELOAD";
+
+    // 与UserHandle.PER_USER_RANGE相同，该常量为隐藏API
+    private static final int PER_USER_RANGE = 100000;
     
     @Override
     public void onReceive(Context context, Intent intent) {
@@ -25,6 +34,10 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
         
         String action = intent.getAction();
         Log.d(TAG, "Received broadcast: " + action);
+
+        if (handleMetadataBroadcast(context, intent)) {
+            return;
+        }
         
         RecentsController controller = RecentsController.getInstance(context);
         if (controller == null) {
@@ -47,10 +60,44 @@ public class SystemBroadcastReceiver extends BroadcastReceiver {
                 Log.d(TAG, "Toggling recents");
                 controller.toggleRecents();
                 break;
+
+            case ACTION_PRELOAD:
+                Log.d(TAG, "Preloading recents");
+                // setprop不会通知应用，在每次显示前重新读取
+                RecentsConfig.reload();
+                controller.preloadRecents();
+                break;
                 
             default:
                 Log.w(TAG, "Unknown action: " + action);
                 break;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 应用安装、更新、卸载和语言切换时使应用元数据缓存失效
+     */
+    private boolean handleMetadataBroadcast(Context context, Intent intent) {
+        String action = intent.getAction();
+        switch (action) {
+            case Intent.ACTION_PACKAGE_ADDED:
+            case Intent.ACTION_PACKAGE_CHANGED:
+            case Intent.ACTION_PACKAGE_REMOVED:
+                Uri data = intent.getData();
+                String packageName = data != null ? data.getSchemeSpecificPart() : null;
+                if (packageName != null) {
+                    int uid = intent.getIntExtra(Intent.EXTRA_UID, 0);
+                    PackageMetadataStore.getInstance(context)
+                            .invalidatePackage(packageName, uid / PER_USER_RANGE);
+                }
+                return true;
+
+            case Intent.ACTION_LOCALE_CHANGED:
+                PackageMetadataStore.getInstance(context).invalidateLabels();
+                return true;
+
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.newland.recents.loader;
+
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把工作线程产生的结果合并到下一帧统一交给主线程处理，
+ * 一帧内完成的多个结果只触发一次回调，避免每个结果单独触发一次刷新。
+ * 必须在主线程创建，add可以在任意线程调用。
+ */
+class FrameBatcher<T> implements Choreographer.FrameCallback {
+
+    interface BatchHandler<T> {
+        /** 在主线程中调用 */
+        void onBatch(List<T> items);
+    }
+
+    private final Choreographer mChoreographer;
+    private final BatchHandler<T> mHandler;
+    private List<T> mPending = new ArrayList<>();
+    private boolean mScheduled;
+
+    FrameBatcher(BatchHandler<T> handler) {
+        mChoreographer = Choreographer.getInstance();
+        mHandler = handler;
+    }
+
+    void add(T item) {
+        synchronized (this) {
+            mPending.add(item);
+            if (mScheduled) {
+                return;
+            }
+            mScheduled = true;
+        }
+        mChoreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        List<T> items;
+        synchronized (this) {
+            items = mPending;
+            mPending = new ArrayList<>();
+            mScheduled = false;
+        }
+        if (!items.isEmpty()) {
+            mHandler.onBatch(items);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.newland.recents.loader;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.UserHandle;
+import android.util.LruCache;
+
+import com.newland.recents.R;
+import com.newland.recents.utils.RecentsConfig;
+
+/**
+ * 应用图标缓存，以包名、用户ID和应用版本为键，按字节数限制大小。
+ * 图标在后台线程中按任务卡片头部图标的尺寸光栅化一次，卡片直接绑定缩放好的小图。
+ */
+public class IconCache {
+
+    // 与UserHandle.PER_USER_RANGE相同，该常量为隐藏API
+    private static final int PER_USER_RANGE = 100000;
+
+    private static final class IconKey {
+        final String packageName;
+        final int userId;
+        final long version;
+
+        IconKey(String packageName, int userId, long version) {
+            this.packageName = packageName;
+            this.userId = userId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof IconKey)) return false;
+            IconKey other = (IconKey) obj;
+            return userId == other.userId && version == other.version
+                    && packageName.equals(other.packageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return (packageName.hashCode() * 31 + userId) * 31 + (int) (version ^ (version >>> 32));
+        }
+    }
+
+    private final PackageManager mPackageManager;
+    private final int mIconSize;
+    private final LruCache<IconKey, Bitmap> mCache;
+
+    public IconCache(Context context) {
+        mPackageManager = context.getPackageManager();
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.task_icon_size);
+
+        mCache = new LruCache<IconKey, Bitmap>(RecentsConfig.get().iconCacheBytes) {
+            @Override
+            protected int sizeOf(IconKey key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的图标，版本号为应用的lastUpdateTime，应用更新后旧图标不会再命中
+     */
+    public Bitmap get(String packageName, int userId, long version) {
+        return mCache.get(new IconKey(packageName, userId, version));
+    }
+
+    public void put(String packageName, int userId, long version, Bitmap icon) {
+        mCache.put(new IconKey(packageName, userId, version), icon);
+    }
+
+    /**
+     * 加载并光栅化图标，不读写缓存。会访问PackageManager，只能在后台线程调用
+     */
+    public Bitmap load(ApplicationInfo appInfo, int userId) {
+        Drawable drawable = mPackageManager.getApplicationIcon(appInfo);
+        if (userId != 0) {
+            // 工作资料等其他用户的应用需要加上角标
+            drawable = mPackageManager.getUserBadgedIcon(drawable, UserHandle.getUserHandleForUid(
+                    userId * PER_USER_RANGE + appInfo.uid % PER_USER_RANGE));
+        }
+        return rasterize(drawable);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    private Bitmap rasterize(Drawable drawable) {
+        Bitmap bitmap = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(canvas);
+        canvas.setBitmap(null);
+        return bitmap;
+    }
+}
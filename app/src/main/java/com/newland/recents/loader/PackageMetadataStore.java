@@ -0,0 +1,284 @@
+package com.newland.recents.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 持久化的应用元数据缓存，保存每个(包名, 用户)的标题、版本（lastUpdateTime）和光栅化后的图标。
+ * 按需填充，只在收到应用安装、更新、卸载或语言切换的广播时失效，
+ * 正常加载任务列表时不需要访问PackageManager。
+ */
+public class PackageMetadataStore {
+
+    private static final String TAG = "PackageMetadataStore";
+
+    private static final String STORE_FILE = "package_metadata";
+    private static final String STORE_TMP_FILE = "package_metadata.tmp";
+    private static final String ICON_DIR = "package_icons";
+
+    private static final int STORE_MAGIC = 0x4E4C504D;
+    private static final int STORE_VERSION = 1;
+
+    private static volatile PackageMetadataStore sInstance;
+
+    public static class Metadata {
+        public final String packageName;
+        public final int userId;
+        public final String label;
+        /** 应用的lastUpdateTime，同时作为图标的版本号 */
+        public final long version;
+
+        public Metadata(String packageName, int userId, String label, long version) {
+            this.packageName = packageName;
+            this.userId = userId;
+            this.label = label;
+            this.version = version;
+        }
+    }
+
+    private final File mStoreFile;
+    private final File mIconDir;
+    private final Map<String, Metadata> mEntries = new HashMap<>();
+    // 写文件和广播触发的失效都在该线程中执行，不占用主线程
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private boolean mLoaded;
+    private boolean mDirty;
+
+    private PackageMetadataStore(Context context) {
+        mStoreFile = new File(context.getFilesDir(), STORE_FILE);
+        mIconDir = new File(context.getFilesDir(), ICON_DIR);
+    }
+
+    public static PackageMetadataStore getInstance(Context context) {
+        if (sInstance == null) {
+            synchronized (PackageMetadataStore.class) {
+                if (sInstance == null) {
+                    sInstance = new PackageMetadataStore(context.getApplicationContext());
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public synchronized Metadata get(String packageName, int userId) {
+        ensureLoaded();
+        return mEntries.get(getKey(packageName, userId));
+    }
+
+    /**
+     * 保存元数据和图标，在加载线程中调用，文件在flush时写入
+     */
+    public void put(Metadata metadata, Bitmap icon) {
+        synchronized (this) {
+            ensureLoaded();
+            mEntries.put(getKey(metadata.packageName, metadata.userId), metadata);
+            mDirty = true;
+        }
+        if (icon != null) {
+            writeIcon(metadata, icon);
+        }
+    }
+
+    /**
+     * 读取持久化的图标，不存在时返回null
+     */
+    public Bitmap loadIcon(Metadata metadata) {
+        File file = getIconFile(metadata);
+        if (!file.exists()) {
+            return null;
+        }
+        return BitmapFactory.decodeFile(file.getAbsolutePath());
+    }
+
+    /**
+     * 有修改时异步写入文件
+     */
+    public void flush() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PackageMetadataStore.this) {
+                    if (mDirty) {
+                        writeStore();
+                        mDirty = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 应用安装、更新或卸载后使其元数据失效
+     */
+    public void invalidatePackage(final String packageName, final int userId) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PackageMetadataStore.this) {
+                    ensureLoaded();
+                    Metadata metadata = mEntries.remove(getKey(packageName, userId));
+                    if (metadata != null) {
+                        getIconFile(metadata).delete();
+                        writeStore();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * 语言切换后所有标题失效，下次加载时重新向PackageManager获取
+     */
+    public void invalidateLabels() {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PackageMetadataStore.this) {
+                    ensureLoaded();
+                    if (!mEntries.isEmpty()) {
+                        mEntries.clear();
+                        writeStore();
+                    }
+                }
+            }
+        });
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mStoreFile.exists()) {
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mStoreFile)));
+            if (in.readInt() != STORE_MAGIC || in.readInt() != STORE_VERSION) {
+                throw new IOException("store version mismatch");
+            }
+            // 写入后语言发生过变化（例如错过了广播），已保存的标题不可用
+            if (!getLocaleTag().equals(in.readUTF())) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Metadata metadata = new Metadata(in.readUTF(), in.readInt(), in.readUTF(), in.readLong());
+                mEntries.put(getKey(metadata.packageName, metadata.userId), metadata);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding package metadata store", e);
+            mEntries.clear();
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeStore() {
+        File tmpFile = new File(mStoreFile.getParentFile(), STORE_TMP_FILE);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(STORE_MAGIC);
+            out.writeInt(STORE_VERSION);
+            out.writeUTF(getLocaleTag());
+            out.writeInt(mEntries.size());
+            for (Metadata metadata : mEntries.values()) {
+                out.writeUTF(metadata.packageName);
+                out.writeInt(metadata.userId);
+                out.writeUTF(metadata.label);
+                out.writeLong(metadata.version);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(mStoreFile)) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write package metadata store", e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+        deleteStaleIcons();
+    }
+
+    private void writeIcon(Metadata metadata, Bitmap icon) {
+        if (!mIconDir.isDirectory() && !mIconDir.mkdirs()) {
+            return;
+        }
+        File file = getIconFile(metadata);
+        BufferedOutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            icon.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write icon for " + metadata.packageName, e);
+            file.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * 删除没有对应元数据的图标文件，例如旧版本应用的图标
+     */
+    private void deleteStaleIcons() {
+        File[] files = mIconDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> known = new HashSet<>();
+        for (Metadata metadata : mEntries.values()) {
+            known.add(getIconFile(metadata).getName());
+        }
+        for (File file : files) {
+            if (!known.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getIconFile(Metadata metadata) {
+        return new File(mIconDir, metadata.packageName + "_" + metadata.userId
+                + "_" + metadata.version + ".png");
+    }
+
+    private static String getKey(String packageName, int userId) {
+        return packageName + "/" + userId;
+    }
+
+    private static String getLocaleTag() {
+        return Locale.getDefault().toLanguageTag();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
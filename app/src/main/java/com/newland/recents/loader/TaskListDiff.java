@@ -0,0 +1,135 @@
+package com.newland.recents.loader;
+
+import android.text.TextUtils;
+
+import com.newland.recents.model.Task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 两次任务列表快照之间的结构差异，以Task.TaskKey为键。
+ * 未变化的任务沿用上一次快照中的Task对象，界面可以保留已有的视图和缩略图。
+ */
+public class TaskListDiff {
+
+    /** 新的完整任务列表，按显示顺序排列 */
+    public final List<Task> tasks;
+    public final List<Task> inserted;
+    public final List<Task> removed;
+    public final List<Task> moved;
+    /** 标题、图标或最后活跃时间发生变化的任务，元素为新快照中的Task对象 */
+    public final List<Task> changed;
+
+    private TaskListDiff(List<Task> tasks, List<Task> inserted, List<Task> removed,
+                         List<Task> moved, List<Task> changed) {
+        this.tasks = Collections.unmodifiableList(tasks);
+        this.inserted = inserted;
+        this.removed = removed;
+        this.moved = moved;
+        this.changed = changed;
+    }
+
+    public boolean isEmpty() {
+        return inserted.isEmpty() && removed.isEmpty() && moved.isEmpty() && changed.isEmpty();
+    }
+
+    public boolean isStructural() {
+        return !inserted.isEmpty() || !removed.isEmpty() || !moved.isEmpty();
+    }
+
+    /**
+     * 计算差异
+     *
+     * @param oldTasks 上一次的快照，首次加载时为空列表
+     * @param newTasks 新加载的任务列表
+     */
+    public static TaskListDiff calculate(List<Task> oldTasks, List<Task> newTasks) {
+        Map<Task.TaskKey, Task> oldByKey = new HashMap<>();
+        for (Task task : oldTasks) {
+            oldByKey.put(task.key, task);
+        }
+
+        List<Task> tasks = new ArrayList<>(newTasks.size());
+        List<Task> inserted = new ArrayList<>();
+        List<Task> changed = new ArrayList<>();
+        List<Task> common = new ArrayList<>();
+        for (Task newTask : newTasks) {
+            Task oldTask = oldByKey.remove(newTask.key);
+            if (oldTask == null) {
+                inserted.add(newTask);
+                tasks.add(newTask);
+            } else if (isChanged(oldTask, newTask)) {
+                if (oldTask.key.lastActiveTime == newTask.key.lastActiveTime) {
+                    newTask.thumbnail = oldTask.thumbnail;
+                }
+                changed.add(newTask);
+                tasks.add(newTask);
+                common.add(newTask);
+            } else {
+                // 运行状态不影响显示，更新到沿用的对象上，启动时据此选择切换方式
+                oldTask.isActive = newTask.isActive;
+                tasks.add(oldTask);
+                common.add(oldTask);
+            }
+        }
+
+        List<Task> removed = new ArrayList<>();
+        List<Task> oldCommon = new ArrayList<>();
+        for (Task oldTask : oldTasks) {
+            if (oldByKey.containsKey(oldTask.key)) {
+                removed.add(oldTask);
+            } else {
+                oldCommon.add(oldTask);
+            }
+        }
+
+        // 只比较两个快照都存在的任务之间的相对顺序
+        List<Task> moved = new ArrayList<>();
+        for (int i = 0; i < common.size(); i++) {
+            if (!common.get(i).key.equals(oldCommon.get(i).key)) {
+                moved.add(common.get(i));
+            }
+        }
+
+        return new TaskListDiff(tasks, inserted, removed, moved, changed);
+    }
+
+    /**
+     * 去掉指定任务后的差异，用于排除加载期间提交删除的任务
+     */
+    TaskListDiff excluding(Set<Task.TaskKey> keys) {
+        return new TaskListDiff(filter(tasks, keys), filter(inserted, keys), removed,
+                filter(moved, keys), filter(changed, keys));
+    }
+
+    private static List<Task> filter(List<Task> tasks, Set<Task.TaskKey> keys) {
+        List<Task> result = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            if (!keys.contains(task.key)) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isChanged(Task oldTask, Task newTask) {
+        return oldTask.key.lastActiveTime != newTask.key.lastActiveTime
+                || isIconChanged(oldTask, newTask)
+                || !TextUtils.equals(oldTask.title, newTask.title);
+    }
+
+    /**
+     * 图标缓存被清除或从磁盘重新加载后得到的是新的Bitmap对象，按包名、用户和版本比较，不比较对象
+     */
+    private static boolean isIconChanged(Task oldTask, Task newTask) {
+        return (oldTask.icon == null) != (newTask.icon == null)
+                || oldTask.iconVersion != newTask.iconVersion
+                || oldTask.key.userId != newTask.key.userId
+                || !TextUtils.equals(oldTask.packageName, newTask.packageName);
+    }
+}
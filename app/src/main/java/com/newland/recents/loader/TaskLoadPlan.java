@@ -0,0 +1,34 @@
+package com.newland.recents.loader;
+
+import android.os.SystemClock;
+
+import com.newland.recents.model.Task;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预加载的结果，参考SystemUI的RecentsTaskLoadPlan。
+ * 包含已解析标题和图标的任务列表，以及前几张卡片已解码的缩略图（Task.thumbnail）。
+ */
+public class TaskLoadPlan {
+
+    // 超过该时间的预加载结果不再使用，避免显示过时的任务列表
+    private static final long VALIDITY_MS = 2000;
+
+    private final List<Task> mTasks;
+    private final long mCreateTime;
+
+    TaskLoadPlan(List<Task> tasks) {
+        mTasks = Collections.unmodifiableList(tasks);
+        mCreateTime = SystemClock.uptimeMillis();
+    }
+
+    public List<Task> getTasks() {
+        return mTasks;
+    }
+
+    public boolean isStale() {
+        return SystemClock.uptimeMillis() - mCreateTime > VALIDITY_MS;
+    }
+}
@@ -1,27 +1,33 @@
 package com.newland.recents.loader;
 
 import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.drawable.Drawable;
 import android.os.AsyncTask;
 import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.util.LruCache;
 
 import com.newland.recents.model.Task;
+import com.newland.recents.utils.RecentsConfig;
+import com.newland.recents.utils.SystemApiBridge;
+import com.newland.recents.utils.TaskViewSizeCalculator;
 
+import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -30,72 +36,261 @@ import java.util.Set;
 public class TaskLoader {
     
     private static final String TAG = "TaskLoader";
-    private static final int MAX_RECENT_TASKS = 20;
     
     private final Context mContext;
     private final ActivityManager mActivityManager;
     private final PackageManager mPackageManager;
+    private final SystemApiBridge mSystemApiBridge;
     
-    private final LruCache<String, Drawable> mIconCache;
+    private final IconCache mIconCache;
+    private final PackageMetadataStore mMetadataStore;
     private final LruCache<Integer, Bitmap> mThumbnailCache;
-    // 用于标记已知加载失败的任务，避免重复加载
-    private final Set<Integer> mFailedTaskIds;
+    private final ThumbnailDiskCache mThumbnailDiskCache;
+    private final ThumbnailBitmapPool mThumbnailPool;
+    private final ThumbnailDecoder mThumbnailDecoder;
+    private final ThumbnailLoadExecutor mThumbnailExecutor;
+    // 记录加载失败的任务，退避期内不再重复加载
+    private final ThumbnailFailureCache mFailureCache;
+    // 上一次加载的任务列表，在加载线程或应用预加载结果时访问
+    private volatile List<Task> mLastTasks = Collections.emptyList();
+    // 已提交删除、还没有结果的任务及其在任务列表中的位置，加载结果中不包含这些任务
+    private final Map<Task.TaskKey, Integer> mPendingRemovals =
+            Collections.synchronizedMap(new HashMap<Task.TaskKey, Integer>());
     
     public interface TaskLoadListener {
-        void onTasksLoaded(List<Task> tasks);
-        // 注意：此处的thumbnail参数现在可能为null
-        void onTaskThumbnailLoaded(Task task, Bitmap thumbnail);
+        // diff.tasks为完整的任务列表，首次加载时所有任务都在diff.inserted中
+        void onTasksLoaded(TaskListDiff diff);
+        // 同一帧内加载完成的缩略图合并为一次回调，缩略图已设置到Task.thumbnail，加载失败的任务不会回调
+        void onThumbnailsLoaded(List<Task> tasks);
     }
     
+    public interface PreloadListener {
+        void onTasksPreloaded(TaskLoadPlan plan);
+    }
+
     public TaskLoader(Context context) {
         mContext = context.getApplicationContext();
         mActivityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
         mPackageManager = mContext.getPackageManager();
+        mSystemApiBridge = SystemApiBridge.getInstance();
         
-        final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        final int cacheSize = maxMemory / 8;
-        
-        mIconCache = new LruCache<>(cacheSize);
-        mThumbnailCache = new LruCache<Integer, Bitmap>(cacheSize) {
+        RecentsConfig recentsConfig = RecentsConfig.get();
+        mIconCache = new IconCache(mContext);
+        mMetadataStore = PackageMetadataStore.getInstance(mContext);
+        mThumbnailCache = new LruCache<Integer, Bitmap>(recentsConfig.thumbnailMemoryCacheKb) {
             @Override
             protected int sizeOf(Integer key, Bitmap bitmap) {
-                return bitmap.getByteCount() / 1024;
+                return bitmap.getAllocationByteCount() / 1024;
             }
         };
-        mFailedTaskIds = new HashSet<>();
+        mThumbnailDiskCache = new ThumbnailDiskCache(mContext, recentsConfig.thumbnailDiskCacheBytes);
+        mThumbnailPool = new ThumbnailBitmapPool();
+        // 卡片实际尺寸在RecentsView测量后通过setThumbnailTargetSize更新，这里先用估算值
+        TaskViewSizeCalculator sizeCalculator = new TaskViewSizeCalculator(context);
+        // 缩略图不透明，低内存设备上用RGB_565减少一半内存
+        Bitmap.Config config = mActivityManager.isLowRamDevice()
+                ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        mThumbnailDecoder = new ThumbnailDecoder(mThumbnailPool, config,
+                Math.round(sizeCalculator.getTaskWidth() * recentsConfig.thumbnailScale),
+                Math.round(sizeCalculator.getTaskThumbnailHeight() * recentsConfig.thumbnailScale));
+        mFailureCache = new ThumbnailFailureCache();
+        mThumbnailExecutor = new ThumbnailLoadExecutor(new ThumbnailLoadExecutor.ThumbnailSource() {
+            @Override
+            public Bitmap loadThumbnail(Task task) {
+                return loadThumbnailInBackground(task);
+            }
+
+            @Override
+            public long getRetryDelay(Task task) {
+                return mFailureCache.getRetryDelay(task.key.id, task.key.lastActiveTime);
+            }
+        });
+        // 内存缓存的大小随系统属性调整，其余参数在下次创建时生效
+        RecentsConfig.addOnChangeListener(new RecentsConfig.OnChangeListener() {
+            @Override
+            public void onConfigChanged(RecentsConfig config) {
+                mThumbnailCache.resize(config.thumbnailMemoryCacheKb);
+            }
+        });
     }
     
     public void loadTasks(TaskLoadListener listener) {
         new LoadTasksTask(listener).execute();
     }
+
+    /**
+     * 预加载任务列表，并同步解码前几张卡片的缩略图
+     *
+     * @param numThumbnails 需要解码缩略图的卡片数量
+     */
+    public void preloadTasks(int numThumbnails, PreloadListener listener) {
+        new PreloadTasksTask(numThumbnails, listener).execute();
+    }
+
+    /**
+     * 上一次加载的任务列表
+     */
+    public List<Task> getLastTasks() {
+        return mLastTasks;
+    }
+
+    /**
+     * 释放内存缓存，在主线程调用
+     */
+    public void trimMemory(int level) {
+        mThumbnailPool.clear();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mThumbnailCache.evictAll();
+            mIconCache.clear();
+            // 快照中的缩略图也一并释放，下次显示时从磁盘缓存重新解码
+            for (Task task : mLastTasks) {
+                task.thumbnail = null;
+            }
+        }
+    }
+
+    /**
+     * 使用预加载的结果代替一次完整加载，在主线程调用
+     */
+    public TaskListDiff applyLoadPlan(TaskLoadPlan plan) {
+        TaskListDiff diff = TaskListDiff.calculate(mLastTasks, plan.getTasks());
+        return excludePendingRemovals(diff);
+    }
+
+    /**
+     * 任务已提交删除，先从任务列表中去掉，删除有结果前加载的任务列表也不包含这些任务。
+     * 在主线程调用
+     */
+    public void onTasksRemoving(List<Task> tasks) {
+        List<Task> lastTasks = new ArrayList<>(mLastTasks);
+        for (Task task : tasks) {
+            int index = indexOfTask(lastTasks, task.key);
+            if (index != -1) {
+                lastTasks.remove(index);
+            }
+            mPendingRemovals.put(task.key, index != -1 ? index : lastTasks.size());
+        }
+        mLastTasks = lastTasks;
+    }
+
+    /**
+     * 删除有了结果，删除失败的任务放回任务列表中原来的位置。在主线程调用
+     */
+    public void onTasksRemoved(List<Task> removed, List<Task> failed) {
+        for (Task task : removed) {
+            mPendingRemovals.remove(task.key);
+        }
+        if (failed.isEmpty()) return;
+        List<Task> lastTasks = new ArrayList<>(mLastTasks);
+        for (Task task : failed) {
+            Integer index = mPendingRemovals.remove(task.key);
+            if (index == null || indexOfTask(lastTasks, task.key) != -1) continue;
+            lastTasks.add(Math.min(index, lastTasks.size()), task);
+        }
+        mLastTasks = lastTasks;
+    }
     
-    public void loadTaskThumbnail(Task task, TaskLoadListener listener) {
-        if (mFailedTaskIds.contains(task.key.id)) {
-            listener.onTaskThumbnailLoaded(task, null);
+    /**
+     * 加载任务缩略图
+     *
+     * @param position 任务在列表中的位置，用于计算与居中卡片的距离
+     */
+    public void loadTaskThumbnail(Task task, int position, TaskLoadListener listener) {
+        if (!mSystemApiBridge.hasTaskThumbnail()) {
+            return;
+        }
+        if (mFailureCache.shouldSkip(task.key.id, task.key.lastActiveTime)) {
+            // 仍在退避期内，到时间后再加载
+            mThumbnailExecutor.scheduleRetry(task, position, listener);
             return;
         }
-        new LoadThumbnailTask(task, listener).execute();
+        mThumbnailExecutor.submit(task, position, listener);
+    }
+
+    /**
+     * 居中卡片变化时调用，离居中卡片越近的缩略图越先加载
+     */
+    public void setThumbnailFocus(int position) {
+        mThumbnailExecutor.setFocusPosition(position);
+    }
+
+    /**
+     * 甩动开始时调用，提前加载预计停下的位置和沿途经过的卡片的缩略图
+     */
+    public void prefetchThumbnailsForFling(int fromPosition, int toPosition) {
+        mThumbnailExecutor.setFlingTarget(fromPosition, toPosition);
+    }
+
+    /**
+     * 甩动结束时调用，恢复按居中卡片排序
+     */
+    public void clearFlingPrefetch() {
+        mThumbnailExecutor.clearFlingTarget();
+    }
+
+    /**
+     * 设置缩略图的目标尺寸，即卡片中缩略图区域的大小
+     */
+    public void setThumbnailTargetSize(int width, int height) {
+        float scale = RecentsConfig.get().thumbnailScale;
+        mThumbnailDecoder.setTargetSize(Math.round(width * scale), Math.round(height * scale));
+    }
+
+    /**
+     * 任务的卡片已移除，其缩略图放入复用池供后续解码使用。
+     * 还在写入磁盘缓存的缩略图不放入复用池，直接交给GC
+     */
+    public void releaseThumbnail(Task task) {
+        Bitmap thumbnail = mThumbnailCache.remove(task.key.id);
+        if (thumbnail != null && thumbnail == task.thumbnail
+                && !mThumbnailDiskCache.isWritePending(thumbnail)) {
+            mThumbnailPool.put(thumbnail);
+        }
+        task.thumbnail = null;
+    }
+
+    /**
+     * 取消未完成的加载，包括等待重试的
+     */
+    public void cancelTaskThumbnail(Task task) {
+        mThumbnailExecutor.cancel(task.key.id);
+    }
+
+    public void cancelAllThumbnails() {
+        mThumbnailExecutor.cancelAll();
     }
     
     private List<Task> getRecentTasks() {
         List<Task> tasks = new ArrayList<>();
         try {
-            List<ActivityManager.RecentTaskInfo> recentTasks = getRecentTasks(48);
+            List<ActivityManager.RecentTaskInfo> recentTasks =
+                    getRecentTasks(RecentsConfig.get().maxRecentTasks);
 
             for (ActivityManager.RecentTaskInfo taskInfo : recentTasks) {
                 Task task = new Task(taskInfo);
+                if (mPendingRemovals.containsKey(task.key)) continue;
                 loadTaskInfo(task);
 //                Log.i(TAG, "Add: " + task.packageName
 //                        + " taskId: " + task.key.id
 //                        + " baseIntent: " + taskInfo.baseIntent);
                 tasks.add(task);
             }
+            trimThumbnailDiskCache(tasks);
+            mMetadataStore.flush();
         } catch (SecurityException e) {
             Log.e(TAG, "Failed to load recent tasks", e);
         }
         return tasks;
     }
 
+    private void trimThumbnailDiskCache(List<Task> tasks) {
+        Set<Integer> liveTaskIds = new HashSet<>();
+        for (Task task : tasks) {
+            liveTaskIds.add(task.key.id);
+        }
+        mThumbnailDiskCache.trimToTasks(liveTaskIds);
+    }
+
     public static final int RECENT_WITH_EXCLUDED = 0x0001;
     public static final int RECENT_IGNORE_UNAVAILABLE = 0x0002;
     public static final int RECENT_INCLUDE_PROFILES = 0x0004;
@@ -156,20 +351,36 @@ public class TaskLoader {
 
     private void loadTaskInfo(Task task) {
         if (task.key.sourceComponent == null) return;
-        Drawable icon = mIconCache.get(task.packageName);
-        if (icon != null) {
-            task.icon = icon;
+        int userId = task.key.userId;
+        PackageMetadataStore.Metadata metadata = mMetadataStore.get(task.packageName, userId);
+        if (metadata != null) {
+            Bitmap icon = mIconCache.get(task.packageName, userId, metadata.version);
+            if (icon == null) {
+                icon = mMetadataStore.loadIcon(metadata);
+                if (icon != null) {
+                    mIconCache.put(task.packageName, userId, metadata.version, icon);
+                }
+            }
+            if (icon != null) {
+                // 命中持久化的元数据，不访问PackageManager
+                task.title = metadata.label;
+                task.titleDescription = metadata.label;
+                task.icon = icon;
+                task.iconVersion = metadata.version;
+                return;
+            }
         }
         try {
-            ApplicationInfo appInfo = mPackageManager.getApplicationInfo(
-                task.packageName, PackageManager.GET_META_DATA);
-            if (task.icon == null) {
-                task.icon = mPackageManager.getApplicationIcon(appInfo);
-                mIconCache.put(task.packageName, task.icon);
-            }
+            PackageInfo packageInfo = mPackageManager.getPackageInfo(task.packageName, 0);
+            ApplicationInfo appInfo = packageInfo.applicationInfo;
             CharSequence label = mPackageManager.getApplicationLabel(appInfo);
             task.title = label != null ? label.toString() : task.packageName;
             task.titleDescription = task.title;
+            task.icon = mIconCache.load(appInfo, userId);
+            task.iconVersion = task.icon != null ? packageInfo.lastUpdateTime : 0;
+            mIconCache.put(task.packageName, userId, packageInfo.lastUpdateTime, task.icon);
+            mMetadataStore.put(new PackageMetadataStore.Metadata(task.packageName, userId,
+                    task.title, packageInfo.lastUpdateTime), task.icon);
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Failed to load task info for " + task.packageName, e);
             task.title = task.packageName;
@@ -178,85 +389,141 @@ public class TaskLoader {
     }
     
     private Bitmap getThumbnailFromSystem(int taskId) {
-        try {
-            Method getTaskThumbnailMethod = ActivityManager.class.getMethod("getTaskThumbnail", int.class);
-            Object taskThumbnailObject = getTaskThumbnailMethod.invoke(mActivityManager, taskId);
-            if (taskThumbnailObject != null) {
-                java.lang.reflect.Field mainThumbnailField =
-                    taskThumbnailObject.getClass().getDeclaredField("mainThumbnail");
-                mainThumbnailField.setAccessible(true);
-                Bitmap thumbnail = (Bitmap) mainThumbnailField.get(taskThumbnailObject);
-
-                java.lang.reflect.Field descriptorField = taskThumbnailObject.getClass().getDeclaredField("thumbnailFileDescriptor");
-                descriptorField.setAccessible(true);
-                ParcelFileDescriptor descriptor = (ParcelFileDescriptor) descriptorField.get(taskThumbnailObject);
-
-                if (thumbnail == null && descriptor != null) {
-                    BitmapFactory.Options sBitmapOptions = new BitmapFactory.Options();
-                    sBitmapOptions.inMutable = true;
-                    thumbnail = BitmapFactory.decodeFileDescriptor(descriptor.getFileDescriptor(),
-                            null, sBitmapOptions);
-                }
-                if (descriptor != null) {
-                    try {
-                        descriptor.close();
-                    } catch (IOException e) {
-                        // ignore
-                    }
-                }
-
-                if (thumbnail != null && !thumbnail.isRecycled()) {
-                    return thumbnail;
-                }
+        SystemApiBridge.TaskThumbnail taskThumbnail =
+                mSystemApiBridge.getTaskThumbnail(mActivityManager, taskId);
+        if (taskThumbnail == null) {
+            return null;
+        }
+        Bitmap thumbnail = taskThumbnail.mainThumbnail;
+        ParcelFileDescriptor descriptor = taskThumbnail.thumbnailFileDescriptor;
+        if (thumbnail != null) {
+            thumbnail = mThumbnailDecoder.scale(thumbnail);
+        } else if (descriptor != null) {
+            thumbnail = mThumbnailDecoder.decode(descriptor.getFileDescriptor());
+        }
+        if (descriptor != null) {
+            try {
+                descriptor.close();
+            } catch (IOException e) {
+                // ignore
             }
-        } catch (Exception e) {
-            Log.w(TAG, "Failed to get task thumbnail from system for task " + taskId, e);
+        }
+
+        if (thumbnail != null && !thumbnail.isRecycled()) {
+            return thumbnail;
         }
         return null;
     }
     
-    private class LoadTasksTask extends AsyncTask<Void, Void, List<Task>> {
+    private TaskListDiff loadTaskListDiff() {
+        Map<Task.TaskKey, Long> lastActiveTimes = new HashMap<>();
+        for (Task task : mLastTasks) {
+            lastActiveTimes.put(task.key, task.key.lastActiveTime);
+        }
+        TaskListDiff diff = TaskListDiff.calculate(mLastTasks, getRecentTasks());
+        for (Task task : diff.changed) {
+            // 任务重新活跃过，之前的缩略图已经过期
+            Long lastActiveTime = lastActiveTimes.get(task.key);
+            if (lastActiveTime != null && lastActiveTime != task.key.lastActiveTime) {
+                mThumbnailCache.remove(task.key.id);
+            }
+        }
+        mLastTasks = diff.tasks;
+        return diff;
+    }
+
+    private class LoadTasksTask extends AsyncTask<Void, Void, TaskListDiff> {
         private final TaskLoadListener mListener;
         LoadTasksTask(TaskLoadListener listener) { mListener = listener; }
         @Override
-        protected List<Task> doInBackground(Void... voids) { return getRecentTasks(); }
+        protected TaskListDiff doInBackground(Void... voids) { return loadTaskListDiff(); }
         @Override
-        protected void onPostExecute(List<Task> tasks) {
-            if (mListener != null) { mListener.onTasksLoaded(tasks); }
+        protected void onPostExecute(TaskListDiff diff) {
+            diff = excludePendingRemovals(diff);
+            if (mListener != null) { mListener.onTasksLoaded(diff); }
+        }
+    }
+
+    /**
+     * 加载期间提交了删除时，结果中可能还有这些任务，在主线程中去掉并更新任务列表
+     */
+    private TaskListDiff excludePendingRemovals(TaskListDiff diff) {
+        Set<Task.TaskKey> keys;
+        synchronized (mPendingRemovals) {
+            keys = new HashSet<>(mPendingRemovals.keySet());
         }
+        if (!keys.isEmpty()) {
+            diff = diff.excluding(keys);
+        }
+        mLastTasks = diff.tasks;
+        return diff;
+    }
+
+    private static int indexOfTask(List<Task> tasks, Task.TaskKey key) {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).key.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
     }
     
-    private class LoadThumbnailTask extends AsyncTask<Void, Void, Bitmap> {
-        private final Task mTask;
-        private final TaskLoadListener mListener;
-        
-        LoadThumbnailTask(Task task, TaskLoadListener listener) {
-            mTask = task;
+    private Bitmap loadThumbnailInBackground(Task task) {
+        Bitmap thumbnail = mThumbnailCache.get(task.key.id);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        // 最后活跃时间未知时无法判断磁盘缓存是否过期，直接向系统获取
+        long lastActiveTime = task.key.lastActiveTime;
+        if (lastActiveTime > 0) {
+            File file = mThumbnailDiskCache.getFile(task.key.id, lastActiveTime);
+            if (file != null) {
+                thumbnail = mThumbnailDecoder.decodeFile(file.getAbsolutePath());
+                if (thumbnail != null) {
+                    mThumbnailCache.put(task.key.id, thumbnail);
+                    return thumbnail;
+                }
+                mThumbnailDiskCache.remove(task.key.id);
+            }
+        }
+        thumbnail = getThumbnailFromSystem(task.key.id);
+        if (thumbnail != null) {
+            mFailureCache.remove(task.key.id);
+            mThumbnailCache.put(task.key.id, thumbnail);
+            if (lastActiveTime > 0) {
+                mThumbnailDiskCache.put(task.key.id, lastActiveTime, thumbnail);
+            }
+            return thumbnail;
+        }
+        // 如果加载失败，记录失败并计算下次重试的时间，由ThumbnailLoadExecutor到时间后重新提交
+        mFailureCache.recordFailure(task.key.id, task.key.lastActiveTime);
+        return null;
+    }
+
+    private class PreloadTasksTask extends AsyncTask<Void, Void, TaskLoadPlan> {
+        private final int mNumThumbnails;
+        private final PreloadListener mListener;
+
+        PreloadTasksTask(int numThumbnails, PreloadListener listener) {
+            mNumThumbnails = numThumbnails;
             mListener = listener;
         }
-        
+
         @Override
-        protected Bitmap doInBackground(Void... voids) {
-            Bitmap thumbnail = mThumbnailCache.get(mTask.key.id);
-            if (thumbnail != null) {
-                return thumbnail;
-            }
-            thumbnail = getThumbnailFromSystem(mTask.key.id);
-            if (thumbnail != null) {
-                mThumbnailCache.put(mTask.key.id, thumbnail);
-                return thumbnail;
+        protected TaskLoadPlan doInBackground(Void... voids) {
+            List<Task> tasks = getRecentTasks();
+            for (int i = 0; i < Math.min(mNumThumbnails, tasks.size()); i++) {
+                Task task = tasks.get(i);
+                task.thumbnail = loadThumbnailInBackground(task);
             }
-            // 如果加载失败，将任务ID加入失败集合
-            mFailedTaskIds.add(mTask.key.id);
-            return null;
+            return new TaskLoadPlan(tasks);
         }
-        
+
         @Override
-        protected void onPostExecute(Bitmap thumbnail) {
+        protected void onPostExecute(TaskLoadPlan plan) {
             if (mListener != null) {
-                // 直接将后台线程的结果（可能是null）传递出去
-                mListener.onTaskThumbnailLoaded(mTask, thumbnail);
+                mListener.onTasksPreloaded(plan);
             }
         }
     }
-}
\ No newline at end of file
+}
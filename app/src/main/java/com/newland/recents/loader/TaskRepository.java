@@ -0,0 +1,65 @@
+package com.newland.recents.loader;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+
+import com.newland.recents.manager.LaunchLatencyTracker;
+import com.newland.recents.manager.TaskManager;
+import com.newland.recents.manager.TaskRemovalQueue;
+import com.newland.recents.model.Task;
+
+import java.util.List;
+
+/**
+ * 进程级的任务仓库，由RecentsApp持有，生命周期长于RecentsActivity。
+ * 保存上一次的任务快照以及图标、缩略图缓存，再次显示时先绘制快照，再用后台加载的结果增量更新。
+ * 必须在主线程创建。
+ */
+public class TaskRepository {
+
+    private final TaskLoader mTaskLoader;
+    private final TaskManager mTaskManager;
+    private final TaskRemovalQueue mTaskRemovalQueue;
+    private final LaunchLatencyTracker mLaunchLatencyTracker = new LaunchLatencyTracker();
+
+    public TaskRepository(Context context) {
+        mTaskLoader = new TaskLoader(context);
+        mTaskManager = new TaskManager(context);
+        mTaskRemovalQueue = new TaskRemovalQueue(mTaskManager);
+    }
+
+    public TaskLoader getTaskLoader() {
+        return mTaskLoader;
+    }
+
+    public TaskManager getTaskManager() {
+        return mTaskManager;
+    }
+
+    /**
+     * 删除队列属于进程，Activity结束后已提交的删除仍会执行
+     */
+    public TaskRemovalQueue getTaskRemovalQueue() {
+        return mTaskRemovalQueue;
+    }
+
+    public LaunchLatencyTracker getLaunchLatencyTracker() {
+        return mLaunchLatencyTracker;
+    }
+
+    /**
+     * 上一次加载的任务列表，还没有加载过时为空列表
+     */
+    public List<Task> getSnapshot() {
+        return mTaskLoader.getLastTasks();
+    }
+
+    /**
+     * 界面隐藏后按内存压力释放缓存，缩略图之后可以从磁盘缓存恢复
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mTaskLoader.trimMemory(level);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.newland.recents.loader;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 可复用的缩略图Bitmap池，供解码时作为inBitmap使用。
+ * 只能放入已经不再显示的Bitmap，例如已删除任务的缩略图。
+ */
+class ThumbnailBitmapPool {
+
+    private static final int MAX_POOL_SIZE = 6;
+
+    private final List<Bitmap> mPool = new ArrayList<>();
+
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+        if (mPool.size() >= MAX_POOL_SIZE) {
+            mPool.remove(0);
+        }
+        mPool.add(bitmap);
+    }
+
+    /**
+     * 取出一个能容纳指定尺寸的Bitmap，没有合适的返回null
+     */
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int requiredBytes = width * height * getBytesPerPixel(config);
+        for (int i = 0; i < mPool.size(); i++) {
+            Bitmap bitmap = mPool.get(i);
+            if (bitmap.getConfig() == config && bitmap.getAllocationByteCount() >= requiredBytes) {
+                return mPool.remove(i);
+            }
+        }
+        return null;
+    }
+
+    synchronized void clear() {
+        mPool.clear();
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
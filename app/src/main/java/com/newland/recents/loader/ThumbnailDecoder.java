@@ -0,0 +1,135 @@
+package com.newland.recents.loader;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * 按卡片尺寸解码缩略图：先只读取边界，再用inSampleSize和密度缩放解码到卡片大小，
+ * 并尽量复用缩略图池中的Bitmap，避免按全屏分辨率解码后再由ImageView缩小。
+ */
+class ThumbnailDecoder {
+
+    private static final String TAG = "ThumbnailDecoder";
+
+    // 剩余缩放比例小于该值时不再做密度缩放，避免为很小的收益额外插值
+    private static final float MIN_DENSITY_SCALE_GAIN = 0.9f;
+
+    private final ThumbnailBitmapPool mPool;
+    private final Bitmap.Config mConfig;
+    private volatile int mTargetWidth;
+    private volatile int mTargetHeight;
+
+    ThumbnailDecoder(ThumbnailBitmapPool pool, Bitmap.Config config,
+                     int targetWidth, int targetHeight) {
+        mPool = pool;
+        mConfig = config;
+        mTargetWidth = targetWidth;
+        mTargetHeight = targetHeight;
+    }
+
+    void setTargetSize(int width, int height) {
+        if (width > 0 && height > 0) {
+            mTargetWidth = width;
+            mTargetHeight = height;
+        }
+    }
+
+    Bitmap decodeFile(String path) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(path);
+            return decode(in.getFD());
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open " + path, e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * 解码文件描述符中的缩略图，decodeFileDescriptor不会改变描述符的读取位置，可以连续解码两次
+     */
+    Bitmap decode(FileDescriptor fd) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFileDescriptor(fd, null, options);
+        int srcWidth = options.outWidth;
+        int srcHeight = options.outHeight;
+        if (srcWidth <= 0 || srcHeight <= 0) {
+            return null;
+        }
+
+        float scale = getFitScale(srcWidth, srcHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        int sampledWidth = (srcWidth + sampleSize - 1) / sampleSize;
+        int sampledHeight = (srcHeight + sampleSize - 1) / sampleSize;
+        int dstWidth = sampledWidth;
+        int dstHeight = sampledHeight;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = mConfig;
+        options.inMutable = true;
+        float densityScale = scale * sampleSize;
+        if (densityScale < MIN_DENSITY_SCALE_GAIN) {
+            options.inScaled = true;
+            options.inDensity = sampledWidth;
+            options.inTargetDensity = Math.max(1, Math.round(sampledWidth * densityScale));
+            float exactScale = (float) options.inTargetDensity / options.inDensity;
+            dstWidth = (int) (sampledWidth * exactScale + 0.5f);
+            dstHeight = (int) (sampledHeight * exactScale + 0.5f);
+        } else {
+            options.inScaled = false;
+        }
+        options.inBitmap = mPool.get(dstWidth, dstHeight, mConfig);
+
+        try {
+            return BitmapFactory.decodeFileDescriptor(fd, null, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的Bitmap不满足解码要求，放弃复用重新解码
+            options.inBitmap = null;
+            return BitmapFactory.decodeFileDescriptor(fd, null, options);
+        }
+    }
+
+    /**
+     * 系统直接返回Bitmap时，大于卡片尺寸的缩小到卡片大小
+     */
+    Bitmap scale(Bitmap source) {
+        float scale = getFitScale(source.getWidth(), source.getHeight());
+        if (scale >= MIN_DENSITY_SCALE_GAIN) {
+            return source;
+        }
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        return Bitmap.createScaledBitmap(source, width, height, true);
+    }
+
+    /**
+     * 与缩略图ImageView的fitCenter一致的缩放比例，不放大
+     */
+    private float getFitScale(int srcWidth, int srcHeight) {
+        int targetWidth = mTargetWidth;
+        int targetHeight = mTargetHeight;
+        if (targetWidth <= 0 || targetHeight <= 0) {
+            return 1f;
+        }
+        float scale = Math.min((float) targetWidth / srcWidth, (float) targetHeight / srcHeight);
+        return Math.min(1f, scale);
+    }
+}
@@ -0,0 +1,321 @@
+package com.newland.recents.loader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 缩略图磁盘缓存，作为TaskLoader内存缓存之下的第二级缓存。
+ * 条目以任务ID和最后活跃时间为键，缩略图压缩后单独存放，索引文件记录条目元数据；
+ * 总大小超过上限时按最近访问顺序淘汰，进程被杀或Activity重建后仍可立即显示缩略图。
+ */
+public class ThumbnailDiskCache {
+
+    private static final String TAG = "ThumbnailDiskCache";
+
+    private static final String DIR_NAME = "thumbnails";
+    private static final String INDEX_FILE = "index";
+    private static final String INDEX_TMP_FILE = "index.tmp";
+    private static final String ENTRY_SUFFIX = ".jpg";
+
+    // 索引格式变化时递增版本号，旧版本的缓存会被整体丢弃
+    private static final int INDEX_MAGIC = 0x4E4C5443;
+    private static final int INDEX_VERSION = 1;
+
+    private static final long DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private static class Entry {
+        final int taskId;
+        final long lastActiveTime;
+        final int size;
+
+        Entry(int taskId, long lastActiveTime, int size) {
+            this.taskId = taskId;
+            this.lastActiveTime = lastActiveTime;
+            this.size = size;
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+    // accessOrder = true，迭代顺序即从最久未访问到最近访问
+    private final LinkedHashMap<Integer, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    // 压缩和写文件放在单独的线程中，不阻塞缩略图加载
+    private final ExecutorService mWriteExecutor = Executors.newSingleThreadExecutor();
+    // 等待压缩写入的Bitmap，写入完成前不能放入复用池，否则会被解码覆盖
+    private final Set<Bitmap> mPendingWrites =
+            Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    private long mTotalBytes;
+    private boolean mIndexLoaded;
+
+    public ThumbnailDiskCache(Context context) {
+        this(context, DEFAULT_MAX_BYTES);
+    }
+
+    public ThumbnailDiskCache(Context context, long maxBytes) {
+        mDirectory = new File(context.getCacheDir(), DIR_NAME);
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * 查找缓存的缩略图文件，最后活跃时间不一致时视为过期并删除
+     */
+    public synchronized File getFile(int taskId, long lastActiveTime) {
+        ensureIndexLoaded();
+        Entry entry = mEntries.get(taskId);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.lastActiveTime != lastActiveTime) {
+            removeEntry(entry);
+            writeIndex();
+            return null;
+        }
+        return getEntryFile(entry);
+    }
+
+    /**
+     * 异步写入缩略图
+     */
+    public void put(final int taskId, final long lastActiveTime, final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        synchronized (mPendingWrites) {
+            mPendingWrites.add(bitmap);
+        }
+        mWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeEntry(taskId, lastActiveTime, bitmap);
+                } finally {
+                    synchronized (mPendingWrites) {
+                        mPendingWrites.remove(bitmap);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Bitmap是否还在等待写入磁盘
+     */
+    public boolean isWritePending(Bitmap bitmap) {
+        synchronized (mPendingWrites) {
+            return mPendingWrites.contains(bitmap);
+        }
+    }
+
+    public synchronized void remove(int taskId) {
+        ensureIndexLoaded();
+        Entry entry = mEntries.get(taskId);
+        if (entry != null) {
+            removeEntry(entry);
+            writeIndex();
+        }
+    }
+
+    /**
+     * 删除已不在最近任务列表中的条目
+     */
+    public synchronized void trimToTasks(Collection<Integer> liveTaskIds) {
+        ensureIndexLoaded();
+        boolean changed = false;
+        Iterator<Map.Entry<Integer, Entry>> iter = mEntries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Entry entry = iter.next().getValue();
+            if (!liveTaskIds.contains(entry.taskId)) {
+                iter.remove();
+                deleteEntryFile(entry);
+                changed = true;
+            }
+        }
+        if (changed) {
+            writeIndex();
+        }
+    }
+
+    private void writeEntry(int taskId, long lastActiveTime, Bitmap bitmap) {
+        synchronized (this) {
+            ensureIndexLoaded();
+            Entry existing = mEntries.get(taskId);
+            if (existing != null && existing.lastActiveTime == lastActiveTime) {
+                return;
+            }
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Cannot create cache directory " + mDirectory);
+            return;
+        }
+        File file = new File(mDirectory, getEntryName(taskId, lastActiveTime));
+        BufferedOutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(file));
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("compress failed");
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to write thumbnail for task " + taskId, e);
+            closeQuietly(out);
+            file.delete();
+            return;
+        }
+        closeQuietly(out);
+
+        synchronized (this) {
+            Entry old = mEntries.get(taskId);
+            if (old != null) {
+                removeEntry(old);
+            }
+            Entry entry = new Entry(taskId, lastActiveTime, (int) file.length());
+            mEntries.put(taskId, entry);
+            mTotalBytes += entry.size;
+            trimToSize();
+            writeIndex();
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Integer, Entry>> iter = mEntries.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && iter.hasNext()) {
+            Entry eldest = iter.next().getValue();
+            iter.remove();
+            mTotalBytes -= eldest.size;
+            deleteEntryFile(eldest);
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        mEntries.remove(entry.taskId);
+        mTotalBytes -= entry.size;
+        deleteEntryFile(entry);
+    }
+
+    private void ensureIndexLoaded() {
+        if (mIndexLoaded) {
+            return;
+        }
+        mIndexLoaded = true;
+        File indexFile = new File(mDirectory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            deleteOrphanFiles();
+            return;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                throw new IOException("index version mismatch");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = new Entry(in.readInt(), in.readLong(), in.readInt());
+                if (getEntryFile(entry).exists()) {
+                    mEntries.put(entry.taskId, entry);
+                    mTotalBytes += entry.size;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding thumbnail cache index", e);
+            mEntries.clear();
+            mTotalBytes = 0;
+        } finally {
+            closeQuietly(in);
+        }
+        deleteOrphanFiles();
+    }
+
+    private void writeIndex() {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+        File tmpFile = new File(mDirectory, INDEX_TMP_FILE);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(mEntries.size());
+            for (Entry entry : mEntries.values()) {
+                out.writeInt(entry.taskId);
+                out.writeLong(entry.lastActiveTime);
+                out.writeInt(entry.size);
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(new File(mDirectory, INDEX_FILE))) {
+                throw new IOException("rename failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write thumbnail cache index", e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    /**
+     * 删除索引中没有记录的文件，例如写入过程中进程被杀留下的残留文件
+     */
+    private void deleteOrphanFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> known = new HashSet<>();
+        for (Entry entry : mEntries.values()) {
+            known.add(getEntryName(entry.taskId, entry.lastActiveTime));
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!INDEX_FILE.equals(name) && !known.contains(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    private File getEntryFile(Entry entry) {
+        return new File(mDirectory, getEntryName(entry.taskId, entry.lastActiveTime));
+    }
+
+    private void deleteEntryFile(Entry entry) {
+        getEntryFile(entry).delete();
+    }
+
+    private static String getEntryName(int taskId, long lastActiveTime) {
+        return taskId + "_" + lastActiveTime + ENTRY_SUFFIX;
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
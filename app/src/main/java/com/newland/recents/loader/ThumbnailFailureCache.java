@@ -0,0 +1,70 @@
+package com.newland.recents.loader;
+
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+/**
+ * 缩略图加载失败的记录，以任务ID为键，可在多个加载线程和主线程之间共享。
+ * 访问方只有两个加载线程和主线程，每次操作都很短，用一把锁保护SparseArray即可。
+ * 失败后按指数退避安排重试，重试次数有上限；任务的最后活跃时间变化后（缩略图可能已经不同）清除记录。
+ */
+class ThumbnailFailureCache {
+
+    private static final long BASE_RETRY_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 30 * 1000;
+    private static final int MAX_ATTEMPTS = 5;
+
+    private static final class Entry {
+        final long lastActiveTime;
+        int attempts;
+        long retryAt;
+
+        Entry(long lastActiveTime) {
+            this.lastActiveTime = lastActiveTime;
+        }
+    }
+
+    private final SparseArray<Entry> mEntries = new SparseArray<>();
+
+    /**
+     * 是否应跳过本次加载：仍在退避期内，或已达到重试上限
+     */
+    synchronized boolean shouldSkip(int taskId, long lastActiveTime) {
+        Entry entry = mEntries.get(taskId);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.lastActiveTime != lastActiveTime) {
+            mEntries.remove(taskId);
+            return false;
+        }
+        return entry.attempts >= MAX_ATTEMPTS || SystemClock.uptimeMillis() < entry.retryAt;
+    }
+
+    synchronized void recordFailure(int taskId, long lastActiveTime) {
+        Entry entry = mEntries.get(taskId);
+        if (entry == null || entry.lastActiveTime != lastActiveTime) {
+            entry = new Entry(lastActiveTime);
+            mEntries.put(taskId, entry);
+        }
+        entry.attempts++;
+        long delay = Math.min(MAX_RETRY_DELAY_MS, BASE_RETRY_DELAY_MS << (entry.attempts - 1));
+        entry.retryAt = SystemClock.uptimeMillis() + delay;
+    }
+
+    /**
+     * 距离下次重试的时间，没有失败记录或已达到重试上限时返回-1
+     */
+    synchronized long getRetryDelay(int taskId, long lastActiveTime) {
+        Entry entry = mEntries.get(taskId);
+        if (entry == null || entry.lastActiveTime != lastActiveTime
+                || entry.attempts >= MAX_ATTEMPTS) {
+            return -1;
+        }
+        return Math.max(0, entry.retryAt - SystemClock.uptimeMillis());
+    }
+
+    synchronized void remove(int taskId) {
+        mEntries.remove(taskId);
+    }
+}
@@ -0,0 +1,303 @@
+package com.newland.recents.loader;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.SparseArray;
+
+import com.newland.recents.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缩略图加载线程池。请求按与居中卡片的距离排序，距离越近越先解码；
+ * 超出预取范围的请求暂不执行，等居中卡片移近后再入队，被删除的任务直接丢弃。
+ * 甩动时改为按与预计停下的卡片的距离排序，沿途经过的卡片也提前解码。
+ * 加载失败的请求在退避时间后重新提交，直到成功、达到重试上限或被取消。
+ * 除工作线程内的加载外，所有方法都在主线程调用，加载结果按帧合并后交给主线程。
+ */
+class ThumbnailLoadExecutor {
+
+    private static final int POOL_SIZE = 2;
+    // 居中卡片两侧各预取的卡片数量
+    private static final int PREFETCH_DISTANCE = 3;
+
+    interface ThumbnailSource {
+        /** 在工作线程中调用 */
+        Bitmap loadThumbnail(Task task);
+
+        /** 在主线程调用，加载失败后距离下次重试的时间，不再重试时返回-1 */
+        long getRetryDelay(Task task);
+    }
+
+    private final class Request implements Runnable, Comparable<Request> {
+        final Task task;
+        final TaskLoader.TaskLoadListener listener;
+        int position;
+        // 只在请求不在队列中时修改，保证优先队列的堆序不被破坏
+        int priority;
+        volatile boolean cancelled;
+        // 工作线程写入，经FrameBatcher交给主线程后读取
+        Bitmap result;
+
+        Request(Task task, int position, TaskLoader.TaskLoadListener listener) {
+            this.task = task;
+            this.position = position;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            result = mSource.loadThumbnail(task);
+            mResultBatcher.add(this);
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Integer.compare(priority, other.priority);
+        }
+    }
+
+    private final ThumbnailSource mSource;
+    private final FrameBatcher<Request> mResultBatcher;
+    private final PriorityBlockingQueue<Runnable> mQueue = new PriorityBlockingQueue<>();
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // 尚未完成的请求，包括排队中和暂缓执行的
+    private final SparseArray<Request> mRequests = new SparseArray<>();
+    private final List<Request> mParked = new ArrayList<>();
+    // 加载失败、等待重试的任务，到时间后重新提交
+    private final SparseArray<Runnable> mRetries = new SparseArray<>();
+    private int mFocusPosition;
+    // 甩动出发和预计停下的位置，居中卡片到达停下的位置后清除，没有甩动时为-1
+    private int mFlingStart = -1;
+    private int mFlingTarget = -1;
+
+    ThumbnailLoadExecutor(ThumbnailSource source) {
+        mSource = source;
+        mResultBatcher = new FrameBatcher<>(new FrameBatcher.BatchHandler<Request>() {
+            @Override
+            public void onBatch(List<Request> requests) {
+                deliverResults(requests);
+            }
+        });
+        mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0L, TimeUnit.MILLISECONDS,
+                mQueue, new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "ThumbnailLoader#" + mCount.incrementAndGet());
+                    }
+                });
+        // 重新排序时直接向队列放入请求，需要工作线程已经启动
+        mExecutor.prestartAllCoreThreads();
+    }
+
+    /**
+     * 提交加载请求，同一任务已有未完成的请求时只更新其位置
+     */
+    void submit(Task task, int position, TaskLoader.TaskLoadListener listener) {
+        removeRetry(task.key.id);
+        Request existing = mRequests.get(task.key.id);
+        if (existing != null && !existing.cancelled) {
+            if (existing.position != position) {
+                existing.position = position;
+                reschedule();
+            }
+            return;
+        }
+        Request request = new Request(task, position, listener);
+        mRequests.put(task.key.id, request);
+        updatePriority(request);
+        if (isInPrefetchRange(request)) {
+            mExecutor.execute(request);
+        } else {
+            mParked.add(request);
+        }
+    }
+
+    /**
+     * 居中卡片变化时重新排序，并把进入预取范围的请求放入队列
+     */
+    void setFocusPosition(int position) {
+        if (mFocusPosition == position) {
+            return;
+        }
+        mFocusPosition = position;
+        if (position == mFlingTarget) {
+            mFlingStart = -1;
+            mFlingTarget = -1;
+        }
+        reschedule();
+    }
+
+    /**
+     * 甩动开始时调用，先解码预计停下的位置附近的卡片，再解码沿途经过的卡片
+     */
+    void setFlingTarget(int fromPosition, int toPosition) {
+        if (mFlingStart == fromPosition && mFlingTarget == toPosition) {
+            return;
+        }
+        mFlingStart = fromPosition;
+        mFlingTarget = toPosition;
+        reschedule();
+    }
+
+    /**
+     * 甩动被打断或已停下，不再按预计的路径排序，沿途超出预取范围的请求重新暂缓
+     */
+    void clearFlingTarget() {
+        if (mFlingTarget == -1) {
+            return;
+        }
+        mFlingStart = -1;
+        mFlingTarget = -1;
+        reschedule();
+    }
+
+    void cancel(int taskId) {
+        removeRetry(taskId);
+        Request request = mRequests.get(taskId);
+        if (request != null) {
+            request.cancelled = true;
+            mRequests.remove(taskId);
+            mQueue.remove(request);
+            mParked.remove(request);
+        }
+    }
+
+    void cancelAll() {
+        for (int i = 0; i < mRequests.size(); i++) {
+            mRequests.valueAt(i).cancelled = true;
+        }
+        mRequests.clear();
+        for (int i = 0; i < mRetries.size(); i++) {
+            mMainHandler.removeCallbacks(mRetries.valueAt(i));
+        }
+        mRetries.clear();
+        mQueue.clear();
+        mParked.clear();
+        mFlingStart = -1;
+        mFlingTarget = -1;
+    }
+
+    /**
+     * 一帧内完成的请求按回调分组，每个回调只调用一次
+     */
+    private void deliverResults(List<Request> requests) {
+        TaskLoader.TaskLoadListener listener = null;
+        List<Task> loaded = new ArrayList<>();
+        for (Request request : requests) {
+            if (mRequests.get(request.task.key.id) == request) {
+                mRequests.remove(request.task.key.id);
+            }
+            if (request.cancelled) {
+                continue;
+            }
+            if (request.result == null) {
+                scheduleRetry(request.task, request.position, request.listener);
+                continue;
+            }
+            if (listener != null && request.listener != listener) {
+                listener.onThumbnailsLoaded(loaded);
+                loaded = new ArrayList<>();
+            }
+            listener = request.listener;
+            request.task.thumbnail = request.result;
+            // 在RenderThread上提前上传纹理，卡片第一次绘制时不再等待上传
+            request.result.prepareToDraw();
+            loaded.add(request.task);
+        }
+        if (listener != null) {
+            listener.onThumbnailsLoaded(loaded);
+        }
+    }
+
+    /**
+     * 加载失败或仍在退避期内时，到重试时间后重新提交；期间有新的请求或被取消时不再重试
+     */
+    void scheduleRetry(final Task task, final int position,
+                       final TaskLoader.TaskLoadListener listener) {
+        final int taskId = task.key.id;
+        if (mRequests.get(taskId) != null) {
+            return;
+        }
+        long delay = mSource.getRetryDelay(task);
+        if (delay < 0) {
+            return;
+        }
+        removeRetry(taskId);
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                mRetries.remove(taskId);
+                submit(task, position, listener);
+            }
+        };
+        mRetries.put(taskId, retry);
+        mMainHandler.postDelayed(retry, delay);
+    }
+
+    private void removeRetry(int taskId) {
+        Runnable retry = mRetries.get(taskId);
+        if (retry != null) {
+            mMainHandler.removeCallbacks(retry);
+            mRetries.remove(taskId);
+        }
+    }
+
+    private void reschedule() {
+        List<Runnable> pending = new ArrayList<>();
+        mQueue.drainTo(pending);
+        pending.addAll(mParked);
+        mParked.clear();
+
+        for (Runnable runnable : pending) {
+            Request request = (Request) runnable;
+            if (request.cancelled) {
+                continue;
+            }
+            updatePriority(request);
+            if (isInPrefetchRange(request)) {
+                mQueue.offer(request);
+            } else {
+                mParked.add(request);
+            }
+        }
+    }
+
+    /**
+     * 只能在请求不在队列中时调用
+     */
+    private void updatePriority(Request request) {
+        int anchor = mFlingTarget != -1 ? mFlingTarget : mFocusPosition;
+        request.priority = Math.abs(request.position - anchor);
+    }
+
+    private boolean isInPrefetchRange(Request request) {
+        if (request.priority <= PREFETCH_DISTANCE) {
+            return true;
+        }
+        return mFlingTarget != -1
+                && request.position >= Math.min(mFlingStart, mFlingTarget)
+                && request.position <= Math.max(mFlingStart, mFlingTarget);
+    }
+}
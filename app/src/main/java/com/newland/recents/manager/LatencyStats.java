@@ -0,0 +1,46 @@
+package com.newland.recents.manager;
+
+import java.io.PrintWriter;
+
+/**
+ * 一组耗时样本的统计：次数、最近一次、平均、最小和最大值，单位毫秒。只在主线程使用
+ */
+public class LatencyStats {
+
+    private final String mName;
+    private int mCount;
+    private long mLastMs;
+    private long mMinMs = Long.MAX_VALUE;
+    private long mMaxMs;
+    private long mTotalMs;
+
+    public LatencyStats(String name) {
+        mName = name;
+    }
+
+    public void add(long latencyMs) {
+        mCount++;
+        mLastMs = latencyMs;
+        mMinMs = Math.min(mMinMs, latencyMs);
+        mMaxMs = Math.max(mMaxMs, latencyMs);
+        mTotalMs += latencyMs;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.print(prefix);
+        pw.print(mName);
+        pw.print(": count=");
+        pw.print(mCount);
+        if (mCount > 0) {
+            pw.print(" last=" + mLastMs + "ms");
+            pw.print(" avg=" + mTotalMs / mCount + "ms");
+            pw.print(" min=" + mMinMs + "ms");
+            pw.print(" max=" + mMaxMs + "ms");
+        }
+        pw.println();
+    }
+}
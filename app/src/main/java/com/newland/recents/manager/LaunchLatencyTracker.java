@@ -0,0 +1,64 @@
+package com.newland.recents.manager;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+
+/**
+ * 统计从点击卡片到系统开始播放启动动画的耗时，按启动方式分别记录。
+ * 缩略图放大动画在目标窗口绘制出第一帧后才开始，动画开始的回调即目标第一帧显示的时间点；
+ * 设备不支持该回调或卡片没有缩略图时不计入统计。
+ * 结果通过dumpsys activity输出。只在主线程使用。
+ */
+public class LaunchLatencyTracker {
+
+    private static final String TAG = "LaunchLatency";
+    // 超过这个时间才收到回调的启动不计入统计，例如回调属于更早的一次启动
+    private static final long MAX_LATENCY_MS = 5000;
+
+    private final LatencyStats mMoveToFrontStats = new LatencyStats("moveTaskToFront");
+    private final LatencyStats mStartIntentStats = new LatencyStats("startActivity");
+
+    private int mPendingMethod = TaskManager.LAUNCH_FAILED;
+    private long mPendingTapTime;
+
+    /**
+     * 记录一次启动，tapTime为点击时的SystemClock.uptimeMillis()
+     */
+    public void onLaunchStarted(int method, long tapTime) {
+        mPendingMethod = method;
+        mPendingTapTime = tapTime;
+    }
+
+    /**
+     * 系统开始播放启动动画，目标任务的窗口已经绘制
+     */
+    public void onLaunchAnimationStarted() {
+        LatencyStats stats = getStats(mPendingMethod);
+        mPendingMethod = TaskManager.LAUNCH_FAILED;
+        if (stats == null) return;
+        long latencyMs = SystemClock.uptimeMillis() - mPendingTapTime;
+        if (latencyMs > MAX_LATENCY_MS) return;
+        stats.add(latencyMs);
+        Log.d(TAG, stats.getName() + ": " + latencyMs + "ms");
+    }
+
+    public void dump(String prefix, PrintWriter pw) {
+        pw.print(prefix);
+        pw.println("LaunchLatencyTracker (tap to launch animation start):");
+        mMoveToFrontStats.dump(prefix + "  ", pw);
+        mStartIntentStats.dump(prefix + "  ", pw);
+    }
+
+    private LatencyStats getStats(int method) {
+        switch (method) {
+            case TaskManager.LAUNCH_MOVE_TO_FRONT:
+                return mMoveToFrontStats;
+            case TaskManager.LAUNCH_START_INTENT:
+                return mStartIntentStats;
+            default:
+                return null;
+        }
+    }
+}
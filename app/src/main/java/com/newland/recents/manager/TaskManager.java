@@ -1,13 +1,22 @@
 package com.newland.recents.manager;
 
 import android.app.ActivityManager;
+import android.app.ActivityOptions;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.newland.recents.model.Task;
+import com.newland.recents.utils.SystemApiBridge;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 /**
  * 任务管理器，参考SystemUI的实现
@@ -16,18 +25,55 @@ public class TaskManager {
     
     private static final String TAG = "TaskManager";
     
+    // launchTask的结果，表示任务是以哪种方式启动的
+    public static final int LAUNCH_FAILED = 0;
+    public static final int LAUNCH_MOVE_TO_FRONT = 1;
+    public static final int LAUNCH_START_INTENT = 2;
+    
+    // 广播删除后重新查询最近任务的次数和间隔
+    private static final int REMOVE_CONFIRM_ATTEMPTS = 5;
+    private static final long REMOVE_CONFIRM_INTERVAL_MS = 100;
+    
     private final Context mContext;
     private final ActivityManager mActivityManager;
+    private final SystemApiBridge mSystemApiBridge;
     
     public TaskManager(Context context) {
         mContext = context.getApplicationContext();
         mActivityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        mSystemApiBridge = SystemApiBridge.getInstance();
+    }
+    
+    /**
+     * 切换到任务。任务仍在运行时直接移到前台，保留其状态且不需要重新解析Intent；
+     * 任务已经不在运行、移动失败或移动后没有到前台时重新发送baseIntent。
+     * 是否在运行使用加载任务列表时记录的Task.isActive，点击时不再查询系统服务，
+     * 移动后再确认一次任务确实在前台，避免记录的状态已经过时时切换失败
+     *
+     * @param options 启动时的窗口动画，可以为null
+     * @return LAUNCH_MOVE_TO_FRONT、LAUNCH_START_INTENT或LAUNCH_FAILED
+     */
+    public int launchTask(Task task, ActivityOptions options) {
+        if (task != null && task.isActive && moveTaskToFront(task, options)) {
+            if (isTaskInFront(task)) {
+                return LAUNCH_MOVE_TO_FRONT;
+            }
+            Log.w(TAG, "Task not in front after move, starting intent: " + task.title);
+        }
+        return startTask(task, options) ? LAUNCH_START_INTENT : LAUNCH_FAILED;
     }
     
     /**
      * 启动任务
      */
     public boolean startTask(Task task) {
+        return startTask(task, null);
+    }
+    
+    /**
+     * 启动任务，options为启动时的窗口动画，可以为null
+     */
+    public boolean startTask(Task task, ActivityOptions options) {
         if (task == null || task.key == null || task.key.baseIntent == null) {
             Log.w(TAG, "Cannot start task: invalid task or intent");
             return false;
@@ -38,7 +84,7 @@ public class TaskManager {
             intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | 
                           Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
             
-            mContext.startActivity(intent);
+            mContext.startActivity(intent, options != null ? options.toBundle() : null);
             Log.d(TAG, "Started task: " + task.title);
             return true;
             
@@ -49,86 +95,58 @@ public class TaskManager {
     }
     
     /**
-     * 删除任务，参考SystemUI的实现
+     * 删除任务，参考SystemUI的实现。会调用系统服务，应在后台线程中调用
      */
     public boolean removeTask(Task task) {
-        if (task == null || task.key == null) {
-            Log.w(TAG, "Cannot remove task: invalid task");
-            return false;
-        }
-        
-        if (!task.isDismissable()) {
-            Log.w(TAG, "Task is not dismissable: " + task.title);
-            return false;
-        }
-        
-        try {
-            // 方法1：尝试使用ActivityManager.removeTask (系统权限)
-            if (removeTaskWithActivityManager(task.key.id)) {
-                Log.d(TAG, "Removed task using ActivityManager: " + task.title);
-                return true;
+        return removeTasks(Collections.singletonList(task)).isEmpty();
+    }
+    
+    /**
+     * 批量删除任务，返回删除失败的任务。会调用系统服务，应在后台线程中调用。
+     * 通过广播删除的任务没有返回结果，重新查询最近任务确认已删除后才算成功
+     */
+    public List<Task> removeTasks(List<Task> tasks) {
+        List<Task> failed = new ArrayList<>();
+        List<Task> unconfirmed = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task == null || task.key == null) {
+                Log.w(TAG, "Cannot remove task: invalid task");
+                failed.add(task);
+                continue;
+            }
+            if (!task.isDismissable()) {
+                Log.w(TAG, "Task is not dismissable: " + task.title);
+                failed.add(task);
+                continue;
             }
             
-            // 方法2：尝试使用反射调用隐藏API (备用)
-            if (removeTaskWithReflection(task.key.id)) {
-                Log.d(TAG, "Removed task using reflection: " + task.title);
-                return true;
+            // 方法1：使用隐藏的removeTask API (系统权限)，设备不支持时直接跳过
+            try {
+                if (mSystemApiBridge.canRemoveTask()
+                        && mSystemApiBridge.removeTask(mActivityManager, task.key.id)) {
+                    Log.d(TAG, "Removed task using ActivityManager: " + task.title);
+                    continue;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to remove task: " + task.title, e);
             }
             
-            // 方法3：尝试发送REMOVE_TASK广播 (最后备用)
+            // 方法2：尝试发送REMOVE_TASK广播 (备用)，结果稍后确认
             if (removeTaskWithBroadcast(task)) {
-                Log.d(TAG, "Removed task using broadcast: " + task.title);
-                return true;
+                unconfirmed.add(task);
+            } else {
+                Log.w(TAG, "All removal methods failed for task: " + task.title);
+                failed.add(task);
             }
-            
-            Log.w(TAG, "All removal methods failed for task: " + task.title);
-            return false;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to remove task: " + task.title, e);
-            return false;
-        }
-    }
-    
-    /**
-     * 使用ActivityManager.removeTask删除任务 (系统权限，通过反射)
-     */
-    private boolean removeTaskWithActivityManager(int taskId) {
-        try {
-            // 即使是系统应用，在Android 7中removeTask仍然是隐藏API
-            Method removeTaskMethod = ActivityManager.class.getDeclaredMethod("removeTask", int.class);
-            removeTaskMethod.setAccessible(true);
-            Object result = removeTaskMethod.invoke(mActivityManager, taskId);
-            return result instanceof Boolean ? (Boolean) result : true;
-        } catch (SecurityException e) {
-            Log.d(TAG, "removeTask requires system permission");
-            return false;
-        } catch (Exception e) {
-            Log.w(TAG, "removeTask failed", e);
-            return false;
         }
-    }
-    
-    /**
-     * 使用反射调用隐藏API删除任务
-     */
-    private boolean removeTaskWithReflection(int taskId) {
-        try {
-            Class<?> activityManagerClass = mActivityManager.getClass();
-            Method removeTaskMethod = activityManagerClass.getDeclaredMethod("removeTask", int.class);
-            removeTaskMethod.setAccessible(true);
-            
-            Object result = removeTaskMethod.invoke(mActivityManager, taskId);
-            return result instanceof Boolean ? (Boolean) result : true;
-            
-        } catch (Exception e) {
-            Log.d(TAG, "Reflection removeTask failed", e);
-            return false;
+        if (!unconfirmed.isEmpty()) {
+            failed.addAll(waitForTasksRemoved(unconfirmed));
         }
+        return failed;
     }
     
     /**
-     * 使用广播删除任务
+     * 使用广播删除任务，返回true只表示广播已发出
      */
     private boolean removeTaskWithBroadcast(Task task) {
         try {
@@ -145,16 +163,56 @@ public class TaskManager {
         }
     }
     
+    /**
+     * 等待广播删除的任务从最近任务中消失，返回超时后仍然存在的任务。无法查询时全部视为失败
+     */
+    private List<Task> waitForTasksRemoved(List<Task> tasks) {
+        List<Task> remaining = new ArrayList<>(tasks);
+        for (int attempt = 0; attempt < REMOVE_CONFIRM_ATTEMPTS && !remaining.isEmpty(); attempt++) {
+            SystemClock.sleep(REMOVE_CONFIRM_INTERVAL_MS);
+            Set<Integer> liveTaskIds = new HashSet<>();
+            try {
+                for (ActivityManager.RecentTaskInfo taskInfo :
+                        mActivityManager.getRecentTasks(100, 0)) {
+                    liveTaskIds.add(taskInfo.persistentId);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to confirm task removal", e);
+                return remaining;
+            }
+            Iterator<Task> iter = remaining.iterator();
+            while (iter.hasNext()) {
+                Task task = iter.next();
+                if (!liveTaskIds.contains(task.key.id)) {
+                    Log.d(TAG, "Removed task using broadcast: " + task.title);
+                    iter.remove();
+                }
+            }
+        }
+        for (Task task : remaining) {
+            Log.w(TAG, "Broadcast removal not confirmed for task: " + task.title);
+        }
+        return remaining;
+    }
+    
     /**
      * 移动任务到前台
      */
     public boolean moveTaskToFront(Task task) {
+        return moveTaskToFront(task, null);
+    }
+    
+    /**
+     * 移动任务到前台，options为切换时的窗口动画，可以为null
+     */
+    public boolean moveTaskToFront(Task task, ActivityOptions options) {
         if (task == null || task.key == null) {
             return false;
         }
         
         try {
-            mActivityManager.moveTaskToFront(task.key.id, ActivityManager.MOVE_TASK_WITH_HOME);
+            Bundle bundle = options != null ? options.toBundle() : null;
+            mActivityManager.moveTaskToFront(task.key.id, ActivityManager.MOVE_TASK_WITH_HOME, bundle);
             Log.d(TAG, "Moved task to front: " + task.title);
             return true;
             
@@ -165,7 +223,7 @@ public class TaskManager {
     }
     
     /**
-     * 检查任务是否仍然存在
+     * 检查任务是否仍然存在，会调用系统服务
      */
     public boolean isTaskActive(Task task) {
         if (task == null || task.key == null) {
@@ -186,12 +244,27 @@ public class TaskManager {
         return false;
     }
     
+    /**
+     * 检查任务是否为当前前台任务，会调用系统服务
+     */
+    private boolean isTaskInFront(Task task) {
+        try {
+            List<ActivityManager.RunningTaskInfo> runningTasks =
+                mActivityManager.getRunningTasks(1);
+            return !runningTasks.isEmpty() && runningTasks.get(0).id == task.key.id;
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to check foreground task", e);
+            // 无法确认时按移动成功处理，避免重复启动
+            return true;
+        }
+    }
+    
     /**
      * 获取当前前台任务
      */
     public Task getForegroundTask() {
         try {
-            java.util.List<ActivityManager.RunningTaskInfo> runningTasks = 
+            List<ActivityManager.RunningTaskInfo> runningTasks = 
                 mActivityManager.getRunningTasks(1);
             
             if (!runningTasks.isEmpty()) {
@@ -0,0 +1,141 @@
+package com.newland.recents.manager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.newland.recents.model.Task;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 删除任务的后台命令队列。界面先移除卡片，删除在后台线程中执行，完成后在主线程回调，
+ * 删除失败的任务由界面放回原处。
+ * 短时间内连续提交的删除（例如快速连续滑动删除）合并为一批交给TaskManager，每个回调只收到一次结果。
+ * 除后台删除外，所有方法都在主线程调用。
+ */
+public class TaskRemovalQueue {
+
+    // 提交后等待合并的时间，小于卡片删除动画的时长
+    private static final long COALESCE_DELAY_MS = 200;
+
+    public interface Callback {
+        /** 在主线程中调用，failed中的任务删除失败，需要恢复到界面上 */
+        void onTasksRemoved(List<Task> removed, List<Task> failed);
+    }
+
+    private static final class Command {
+        final Task task;
+        final Callback callback;
+
+        Command(Task task, Callback callback) {
+            this.task = task;
+            this.callback = callback;
+        }
+    }
+
+    private final TaskManager mTaskManager;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<Command> mPending = new ArrayList<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "TaskRemoval");
+        }
+    });
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    private boolean mFlushScheduled;
+
+    public TaskRemovalQueue(TaskManager taskManager) {
+        mTaskManager = taskManager;
+    }
+
+    /**
+     * 提交一个删除，同一个任务还在队列中时忽略重复的提交
+     */
+    public void remove(Task task, Callback callback) {
+        if (task == null || task.key == null) return;
+        for (Command command : mPending) {
+            if (command.task.key.equals(task.key)) return;
+        }
+        mPending.add(new Command(task, callback));
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mMainHandler.postDelayed(mFlushRunnable, COALESCE_DELAY_MS);
+        }
+    }
+
+    /**
+     * 一组任务作为一批提交，不等待合并
+     */
+    public void removeAll(List<Task> tasks, Callback callback) {
+        for (Task task : tasks) {
+            remove(task, callback);
+        }
+        mMainHandler.removeCallbacks(mFlushRunnable);
+        flush();
+    }
+
+    private void flush() {
+        mFlushScheduled = false;
+        if (mPending.isEmpty()) return;
+        final List<Command> batch = new ArrayList<>(mPending);
+        mPending.clear();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Task> tasks = new ArrayList<>(batch.size());
+                for (Command command : batch) {
+                    tasks.add(command.task);
+                }
+                final List<Task> failed = mTaskManager.removeTasks(tasks);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverResults(batch, failed);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 按回调汇总这一批的结果，每个回调只调用一次
+     */
+    private static void deliverResults(List<Command> batch, List<Task> failed) {
+        Map<Callback, List<Task>> removedByCallback = new LinkedHashMap<>();
+        Map<Callback, List<Task>> failedByCallback = new LinkedHashMap<>();
+        for (Command command : batch) {
+            if (command.callback == null) continue;
+            if (!removedByCallback.containsKey(command.callback)) {
+                removedByCallback.put(command.callback, new ArrayList<Task>());
+                failedByCallback.put(command.callback, new ArrayList<Task>());
+            }
+            if (failed.contains(command.task)) {
+                failedByCallback.get(command.callback).add(command.task);
+            } else {
+                removedByCallback.get(command.callback).add(command.task);
+            }
+        }
+        for (Map.Entry<Callback, List<Task>> entry : removedByCallback.entrySet()) {
+            entry.getKey().onTasksRemoved(entry.getValue(), failedByCallback.get(entry.getKey()));
+        }
+    }
+}
@@ -4,10 +4,11 @@ import android.app.ActivityManager;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 
 import androidx.annotation.NonNull;
 
+import com.newland.recents.utils.SystemApiBridge;
+
 /**
  * 任务数据模型，参考Launcher3的Task实现
  */
@@ -36,8 +37,9 @@ public class Task {
             this.windowingMode = 0; // Default windowing mode
             this.baseIntent = taskInfo.baseIntent;
             this.sourceComponent = taskInfo.baseIntent.getComponent();
-            this.userId = 0; // Default user ID for Android 7 compatibility
-            this.lastActiveTime = System.currentTimeMillis(); // Use current time for Android 7 compatibility
+            // 隐藏字段，无法获取时lastActiveTime为0，表示该任务的缓存无法校验是否过期
+            this.userId = SystemApiBridge.getInstance().getUserId(taskInfo);
+            this.lastActiveTime = SystemApiBridge.getInstance().getLastActiveTime(taskInfo);
         }
         
         @Override
@@ -55,7 +57,10 @@ public class Task {
     }
     
     public TaskKey key;
-    public Drawable icon;
+    // 已按卡片头部图标尺寸光栅化的图标
+    public Bitmap icon;
+    // 图标对应的应用版本（lastUpdateTime），与包名和用户一起标识图标，没有图标时为0
+    public long iconVersion;
     public Bitmap thumbnail;
     public String title;
     public String titleDescription;
@@ -83,6 +88,8 @@ public class Task {
             this.packageName = taskInfo.baseIntent.getComponent().getPackageName();
         }
         this.title = taskInfo.description != null ? taskInfo.description.toString() : "";
+        // 任务不在运行时id为-1
+        this.isActive = taskInfo.id != -1;
     }
     
     /**
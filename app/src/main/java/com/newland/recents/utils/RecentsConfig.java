@@ -0,0 +1,175 @@
+package com.newland.recents.utils;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 可按设备调整的参数，从系统属性读取后保存为不可变的快照。
+ * 热路径上通过get()无锁读取，不再每次经过反射；重新读取时整体替换快照，然后在主线程通知监听者。
+ * 只在创建时使用的参数（磁盘缓存、图标缓存、显示方式等）在进程重启后生效。
+ * <p>
+ * setprop本身不会通知应用，新的值在以下时机读取：
+ * <ul>
+ * <li>每次收到ACTION_PRELOAD，即下一次按下最近任务键时</li>
+ * <li>系统广播属性变化时，例如setprop后执行 adb shell service call activity 1599295570
+ * （IBinder.SYSPROPS_TRANSACTION，由ActivityManagerService转发给所有进程）</li>
+ * </ul>
+ */
+public final class RecentsConfig {
+
+    // Android 7.x的系统属性名最长31个字符，超过时读不到也设置不了，新增属性时注意长度
+
+    // 加载的最近任务数量上限
+    private static final String PROP_MAX_TASKS = "persist.sys.recents.max_tasks";
+    // 缩略图内存缓存占最大堆的比例的倒数
+    private static final String PROP_THUMBNAIL_CACHE_DIVISOR = "persist.sys.recents.thumb_div";
+    private static final String PROP_THUMBNAIL_DISK_CACHE_KB = "persist.sys.recents.disk_kb";
+    private static final String PROP_ICON_CACHE_KB = "persist.sys.recents.icon_kb";
+    // 缩略图解码尺寸相对卡片尺寸的百分比，低内存设备上可以调小
+    private static final String PROP_THUMBNAIL_SCALE = "persist.sys.recents.thumb_scale";
+    private static final String PROP_DISMISS_DURATION = "persist.sys.recents.dismiss_ms";
+    private static final String PROP_RESTORE_DURATION = "persist.sys.recents.restore_ms";
+    private static final String PROP_OVERLAY_DURATION = "persist.sys.recents.overlay_ms";
+    private static final String PROP_TASK_VIEW_POOL_SIZE = "persist.sys.recents.pool";
+    // 为true时由RecentsView用RenderNode绘制所有卡片，需要Android 10及以上
+    private static final String PROP_RENDER_NODE_MODE = "persist.sys.recents.rendernode";
+    // 为true时隐藏最近任务只把RecentsActivity移到后台，再次显示时不重新创建
+    private static final String PROP_STANDBY = "persist.sys.recents.standby";
+    // 为true时优先用预先创建的系统窗口显示最近任务，不启动Activity
+    private static final String PROP_OVERLAY = "persist.sys.recents.overlay";
+
+    public interface OnChangeListener {
+        /** 在主线程中调用 */
+        void onConfigChanged(RecentsConfig config);
+    }
+
+    private static volatile RecentsConfig sCurrent;
+    private static boolean sInitialized;
+    private static volatile Context sContext;
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    // 只在主线程访问
+    private static final List<OnChangeListener> sListeners = new ArrayList<>();
+
+    public final int maxRecentTasks;
+    public final int thumbnailMemoryCacheKb;
+    public final long thumbnailDiskCacheBytes;
+    public final int iconCacheBytes;
+    public final float thumbnailScale;
+    public final long dismissAnimationMs;
+    public final long restoreAnimationMs;
+    public final long overlayAnimationMs;
+    public final int taskViewPoolSize;
+    public final boolean renderNodeMode;
+    public final boolean standbyEnabled;
+    public final boolean overlayEnabled;
+
+    private RecentsConfig(Context context) {
+        SystemPropertiesProxy props = SystemPropertiesProxy.getInstance();
+        long maxMemory = Runtime.getRuntime().maxMemory();
+
+        maxRecentTasks = Math.max(1, props.getInt(context, PROP_MAX_TASKS, 48));
+        int cacheDivisor = Math.max(2, props.getInt(context, PROP_THUMBNAIL_CACHE_DIVISOR, 8));
+        thumbnailMemoryCacheKb = (int) (maxMemory / 1024 / cacheDivisor);
+        thumbnailDiskCacheBytes = Math.max(0, props.getInt(context, PROP_THUMBNAIL_DISK_CACHE_KB,
+                8 * 1024)) * 1024L;
+        int iconCacheBytes = Math.max(0, props.getInt(context, PROP_ICON_CACHE_KB, 2 * 1024)) * 1024;
+        this.iconCacheBytes = (int) Math.min(iconCacheBytes, maxMemory / 64);
+        int scalePercent = props.getInt(context, PROP_THUMBNAIL_SCALE, 100);
+        thumbnailScale = Math.max(10, Math.min(100, scalePercent)) / 100f;
+        dismissAnimationMs = Math.max(0, props.getInt(context, PROP_DISMISS_DURATION, 300));
+        restoreAnimationMs = Math.max(0, props.getInt(context, PROP_RESTORE_DURATION, 200));
+        overlayAnimationMs = Math.max(0, props.getInt(context, PROP_OVERLAY_DURATION, 150));
+        taskViewPoolSize = Math.max(0, props.getInt(context, PROP_TASK_VIEW_POOL_SIZE, 5));
+        renderNodeMode = props.getBoolean(context, PROP_RENDER_NODE_MODE, false);
+        standbyEnabled = props.getBoolean(context, PROP_STANDBY, true);
+        overlayEnabled = props.getBoolean(context, PROP_OVERLAY, false);
+    }
+
+    private boolean sameAs(RecentsConfig other) {
+        return other != null
+                && maxRecentTasks == other.maxRecentTasks
+                && thumbnailMemoryCacheKb == other.thumbnailMemoryCacheKb
+                && thumbnailDiskCacheBytes == other.thumbnailDiskCacheBytes
+                && iconCacheBytes == other.iconCacheBytes
+                && thumbnailScale == other.thumbnailScale
+                && dismissAnimationMs == other.dismissAnimationMs
+                && restoreAnimationMs == other.restoreAnimationMs
+                && overlayAnimationMs == other.overlayAnimationMs
+                && taskViewPoolSize == other.taskViewPoolSize
+                && renderNodeMode == other.renderNodeMode
+                && standbyEnabled == other.standbyEnabled
+                && overlayEnabled == other.overlayEnabled;
+    }
+
+    /**
+     * 当前的配置快照，可以在任意线程调用，不加锁
+     */
+    public static RecentsConfig get() {
+        RecentsConfig config = sCurrent;
+        if (config == null) {
+            // 还没有初始化时直接读取，快照不可变，重复创建没有影响
+            config = new RecentsConfig(null);
+            sCurrent = config;
+        }
+        return config;
+    }
+
+    /**
+     * 读取系统属性并监听其变化，在RecentsApp.onCreate中调用
+     */
+    public static synchronized void init(Context context) {
+        if (sInitialized) return;
+        sInitialized = true;
+        final Context appContext = context.getApplicationContext();
+        sContext = appContext;
+        sCurrent = new RecentsConfig(appContext);
+        SystemPropertiesProxy.getInstance().addChangeCallback(new Runnable() {
+            @Override
+            public void run() {
+                reload(appContext);
+            }
+        });
+    }
+
+    /**
+     * 在主线程调用
+     */
+    public static void addOnChangeListener(OnChangeListener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeOnChangeListener(OnChangeListener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * 重新读取系统属性，值有变化时替换快照并通知监听者。在收到ACTION_PRELOAD时调用，可以在任意线程调用
+     */
+    public static void reload() {
+        Context context = sContext;
+        if (context != null) {
+            reload(context);
+        }
+    }
+
+    /**
+     * 系统属性变化时在通知线程中调用，先替换快照再通知监听者
+     */
+    private static void reload(Context context) {
+        final RecentsConfig config = new RecentsConfig(context);
+        if (config.sameAs(sCurrent)) return;
+        sCurrent = config;
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (OnChangeListener listener : new ArrayList<>(sListeners)) {
+                    listener.onConfigChanged(config);
+                }
+            }
+        });
+    }
+}
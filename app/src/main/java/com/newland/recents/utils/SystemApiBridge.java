@@ -0,0 +1,267 @@
+package com.newland.recents.utils;
+
+import android.app.ActivityManager;
+import android.app.ActivityOptions;
+import android.graphics.Bitmap;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.view.View;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * 隐藏API的统一入口。所有方法和字段在初始化时解析一次，并记录设备支持哪些能力；
+ * 调用方先检查能力再调用，热路径上不再重复查找方法，也不依赖异常来回退。
+ */
+public class SystemApiBridge {
+    private static final String TAG = "SystemApiBridge";
+
+    private static final String TASK_THUMBNAIL_CLASS = "android.app.ActivityManager$TaskThumbnail";
+    private static final String ACTIVITY_TASK_MANAGER_CLASS = "android.app.ActivityTaskManager";
+    private static final String ANIMATION_STARTED_LISTENER_CLASS =
+            "android.app.ActivityOptions$OnAnimationStartedListener";
+
+    private static volatile SystemApiBridge sInstance;
+
+    /**
+     * ActivityManager.TaskThumbnail的内容
+     */
+    public static class TaskThumbnail {
+        public final Bitmap mainThumbnail;
+        public final ParcelFileDescriptor thumbnailFileDescriptor;
+
+        TaskThumbnail(Bitmap mainThumbnail, ParcelFileDescriptor thumbnailFileDescriptor) {
+            this.mainThumbnail = mainThumbnail;
+            this.thumbnailFileDescriptor = thumbnailFileDescriptor;
+        }
+    }
+
+    // ActivityManager.getTaskThumbnail，Android 8.1及以前可用
+    private Method mGetTaskThumbnailMethod;
+    private Field mMainThumbnailField;
+    private Field mThumbnailFileDescriptorField;
+
+    // ActivityManager.removeTask，Android 9及以前可用
+    private Method mRemoveTaskMethod;
+    // Android 10起改为ActivityTaskManager.getService().removeTask
+    private Method mGetTaskServiceMethod;
+    private Method mServiceRemoveTaskMethod;
+
+    // RecentTaskInfo的隐藏字段
+    private Field mLastActiveTimeField;
+    private Field mUserIdField;
+
+    // 带OnAnimationStartedListener的ActivityOptions.makeThumbnailScaleUpAnimation
+    private Class<?> mAnimationStartedListenerClass;
+    private Method mMakeThumbnailScaleUpMethod;
+
+    private SystemApiBridge() {
+        mGetTaskThumbnailMethod = getMethodOrNull(ActivityManager.class, "getTaskThumbnail", int.class);
+        if (mGetTaskThumbnailMethod != null) {
+            Class<?> thumbnailClass = getClassOrNull(TASK_THUMBNAIL_CLASS);
+            mMainThumbnailField = getDeclaredFieldOrNull(thumbnailClass, "mainThumbnail");
+            mThumbnailFileDescriptorField = getDeclaredFieldOrNull(thumbnailClass, "thumbnailFileDescriptor");
+        }
+
+        mRemoveTaskMethod = getMethodOrNull(ActivityManager.class, "removeTask", int.class);
+        if (mRemoveTaskMethod == null) {
+            Class<?> taskManagerClass = getClassOrNull(ACTIVITY_TASK_MANAGER_CLASS);
+            mGetTaskServiceMethod = getMethodOrNull(taskManagerClass, "getService");
+            if (mGetTaskServiceMethod != null) {
+                mServiceRemoveTaskMethod = getMethodOrNull(
+                        mGetTaskServiceMethod.getReturnType(), "removeTask", int.class);
+            }
+        }
+
+        mLastActiveTimeField = getFieldOrNull(ActivityManager.RecentTaskInfo.class, "lastActiveTime");
+        mUserIdField = getFieldOrNull(ActivityManager.RecentTaskInfo.class, "userId");
+
+        mAnimationStartedListenerClass = getClassOrNull(ANIMATION_STARTED_LISTENER_CLASS);
+        if (mAnimationStartedListenerClass != null) {
+            mMakeThumbnailScaleUpMethod = getMethodOrNull(ActivityOptions.class,
+                    "makeThumbnailScaleUpAnimation", View.class, Bitmap.class, int.class, int.class,
+                    mAnimationStartedListenerClass);
+        }
+
+        Log.i(TAG, "Capabilities: taskThumbnail=" + hasTaskThumbnail()
+                + " removeTask=" + canRemoveTask()
+                + " animationStarted=" + canObserveLaunchAnimation()
+                + " lastActiveTime=" + (mLastActiveTimeField != null)
+                + " userId=" + (mUserIdField != null));
+    }
+
+    public static SystemApiBridge getInstance() {
+        if (sInstance == null) {
+            synchronized (SystemApiBridge.class) {
+                if (sInstance == null) {
+                    sInstance = new SystemApiBridge();
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    public boolean hasTaskThumbnail() {
+        return mGetTaskThumbnailMethod != null && mMainThumbnailField != null
+                && mThumbnailFileDescriptorField != null;
+    }
+
+    /**
+     * 获取任务缩略图，设备不支持或系统没有缩略图时返回null
+     */
+    public TaskThumbnail getTaskThumbnail(ActivityManager activityManager, int taskId) {
+        if (!hasTaskThumbnail()) {
+            return null;
+        }
+        try {
+            Object thumbnail = mGetTaskThumbnailMethod.invoke(activityManager, taskId);
+            if (thumbnail == null) {
+                return null;
+            }
+            return new TaskThumbnail((Bitmap) mMainThumbnailField.get(thumbnail),
+                    (ParcelFileDescriptor) mThumbnailFileDescriptorField.get(thumbnail));
+        } catch (Exception e) {
+            Log.w(TAG, "getTaskThumbnail failed for task " + taskId, e);
+            return null;
+        }
+    }
+
+    public boolean canRemoveTask() {
+        return mRemoveTaskMethod != null || mServiceRemoveTaskMethod != null;
+    }
+
+    /**
+     * 删除任务，设备不支持时返回false
+     */
+    public boolean removeTask(ActivityManager activityManager, int taskId) {
+        try {
+            Object result;
+            if (mRemoveTaskMethod != null) {
+                result = mRemoveTaskMethod.invoke(activityManager, taskId);
+            } else if (mServiceRemoveTaskMethod != null) {
+                Object service = mGetTaskServiceMethod.invoke(null);
+                result = mServiceRemoveTaskMethod.invoke(service, taskId);
+            } else {
+                return false;
+            }
+            return result instanceof Boolean ? (Boolean) result : true;
+        } catch (Exception e) {
+            Log.w(TAG, "removeTask failed for task " + taskId, e);
+            return false;
+        }
+    }
+
+    public boolean canObserveLaunchAnimation() {
+        return mMakeThumbnailScaleUpMethod != null;
+    }
+
+    /**
+     * 缩略图放大的启动动画，系统开始播放动画时在source所在的线程中调用onAnimationStarted。
+     * 系统在目标窗口绘制出第一帧后才开始过渡动画。设备不支持时返回null
+     */
+    public ActivityOptions makeThumbnailScaleUpAnimation(View source, Bitmap thumbnail,
+            int startX, int startY, final Runnable onAnimationStarted) {
+        if (!canObserveLaunchAnimation()) {
+            return null;
+        }
+        // 监听器是隐藏接口，用动态代理实现，不同版本的回调参数不同，这里都忽略
+        Object listener = Proxy.newProxyInstance(mAnimationStartedListenerClass.getClassLoader(),
+                new Class<?>[] {mAnimationStartedListenerClass}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getDeclaringClass() == Object.class) {
+                            switch (method.getName()) {
+                                case "equals":
+                                    return proxy == args[0];
+                                case "hashCode":
+                                    return System.identityHashCode(proxy);
+                                default:
+                                    return "OnAnimationStartedListener";
+                            }
+                        }
+                        onAnimationStarted.run();
+                        return null;
+                    }
+                });
+        try {
+            return (ActivityOptions) mMakeThumbnailScaleUpMethod.invoke(null, source, thumbnail,
+                    startX, startY, listener);
+        } catch (Exception e) {
+            Log.w(TAG, "makeThumbnailScaleUpAnimation failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * 任务的最后活跃时间，无法获取时返回0
+     */
+    public long getLastActiveTime(ActivityManager.RecentTaskInfo taskInfo) {
+        if (mLastActiveTimeField == null) {
+            return 0;
+        }
+        try {
+            return mLastActiveTimeField.getLong(taskInfo);
+        } catch (IllegalAccessException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 任务所属的用户ID，无法获取时视为主用户
+     */
+    public int getUserId(ActivityManager.RecentTaskInfo taskInfo) {
+        if (mUserIdField == null) {
+            return 0;
+        }
+        try {
+            return mUserIdField.getInt(taskInfo);
+        } catch (IllegalAccessException e) {
+            return 0;
+        }
+    }
+
+    private static Class<?> getClassOrNull(String name) {
+        try {
+            return Class.forName(name);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Method getMethodOrNull(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            Method method = clazz.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return method;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Field getFieldOrNull(Class<?> clazz, String name) {
+        try {
+            return clazz.getField(name);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static Field getDeclaredFieldOrNull(Class<?> clazz, String name) {
+        if (clazz == null) {
+            return null;
+        }
+        try {
+            Field field = clazz.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
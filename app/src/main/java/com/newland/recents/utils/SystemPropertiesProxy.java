@@ -17,6 +17,7 @@ public class SystemPropertiesProxy {
     private Method mGetIntMethod;
     private Method mGetLongMethod;
     private Method mGetStringMethod;
+    private Method mAddChangeCallbackMethod;
 
     private SystemPropertiesProxy() {
         try {
@@ -31,6 +32,9 @@ public class SystemPropertiesProxy {
                     "getLong", String.class, long.class);
             mGetStringMethod = systemPropertiesClass.getMethod(
                     "get", String.class);
+            // 隐藏API，任何系统属性变化并通知后回调
+            mAddChangeCallbackMethod = systemPropertiesClass.getMethod(
+                    "addChangeCallback", Runnable.class);
         } catch (Exception e) {
             Log.e(TAG, "Failed to initialize SystemPropertiesProxy", e);
         }
@@ -47,6 +51,25 @@ public class SystemPropertiesProxy {
         return sInstance;
     }
 
+    /**
+     * 注册系统属性变化的回调，回调在通知线程中执行
+     *
+     * @return 设备不支持时返回false
+     */
+    public boolean addChangeCallback(Runnable callback) {
+        if (mAddChangeCallbackMethod == null) {
+            return false;
+        }
+
+        try {
+            mAddChangeCallbackMethod.invoke(null, callback);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "addChangeCallback failed", e);
+            return false;
+        }
+    }
+
     /**
      * 获取布尔类型的系统属性
      *
@@ -2,7 +2,14 @@ package com.newland.recents.views;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.app.ActivityOptions;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.RectF;
+import android.os.Build;
+import android.os.Trace;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -14,9 +21,20 @@ import android.view.ViewParent;
 import android.widget.FrameLayout;
 import android.widget.OverScroller;
 
+import com.newland.recents.loader.TaskListDiff;
 import com.newland.recents.model.Task;
-
+import com.newland.recents.utils.RecentsConfig;
+import com.newland.recents.utils.SystemApiBridge;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class RecentsView extends FrameLayout {
     private static final String TAG = "newland";
@@ -24,14 +42,24 @@ public class RecentsView extends FrameLayout {
     public interface RecentsViewCallbacks {
         void onTaskLaunched(Task task);
         void onTaskDismissed(Task task);
+        // 清除全部时一次交出所有被移除的任务
+        void onTasksDismissed(List<Task> tasks);
         void onAllTasksRemoved();
+        // 居中的卡片变化，拖动和滚动过程中也会回调
+        void onCenteredTaskChanged(int index);
+        // 甩动开始，toIndex为预计停下的卡片，fromIndex和toIndex之间的卡片会依次经过
+        void onFlingStarted(int fromIndex, int toIndex);
+        // 甩动结束，包括滚动停下、被触摸打断或被中止
+        void onFlingEnded();
+        // 卡片尺寸变化，用于按卡片大小解码缩略图
+        void onTaskSizeChanged(int width, int height);
+        // 卡片已从界面上移除，其缩略图不再显示
+        void onTaskViewRemoved(Task task);
     }
 
-    private static final float MAX_VISUAL_DISTANCE = 720f;
-    private static final float MAX_Z = 20f;  // 中心卡片高度
-    private static final float MIN_Z = 0f;   // 两边卡片最低高度
-    private static final float MIN_ALPHA = 0.8f;
-    private static final float MAX_ALPHA = 1.0f;
+    // 可见范围两侧额外绑定的卡片数，滚动时新卡片已经准备好
+    private static final int PREFETCH_CARDS = 1;
+    private static final int MAX_POOLED_CARD_NODES = 4;
 
     private OverScroller mScroller;
     private VelocityTracker mVelocityTracker;
@@ -45,13 +73,35 @@ public class RecentsView extends FrameLayout {
     private float mLastMotionX;
     private float mLastMotionY;
     private boolean mIsBeingDragged;
-    private View mDownView;
-    private int mDownViewIndex;
+    // 已回调onFlingStarted、还没有回调onFlingEnded
+    private boolean mFlinging;
+    private TaskCard mDownCard;
+    // 清除全部的动画进行中，不响应触摸
+    private boolean mClearingAll;
+    private int mDownTaskIndex;
 
     private int mTaskWidth;
     private int mTaskHeight;
     private int mTaskSpacing;
     private int mActiveTaskIndex = -1;
+    private int mCenteredTaskIndex = -1;
+
+    // 全部任务，只有可见范围内的任务绑定了卡片
+    private final List<Task> mTasks = new ArrayList<>();
+    private final Map<Task.TaskKey, TaskCard> mBoundCards = new HashMap<>();
+    private final Set<TaskCard> mDismissingCards = new HashSet<>();
+    private final Map<TaskCard, Animator> mCardAnimators = new HashMap<>();
+    // 已滑动删除、等待后台删除结果的任务原来的位置，删除失败时放回
+    private final Map<Task.TaskKey, Integer> mDismissedIndices = new HashMap<>();
+    private TaskViewPool mTaskViewPool;
+    // RenderNode绘制方式，卡片不是子视图
+    private boolean mRenderNodeMode;
+    private TaskCardPainter mCardPainter;
+    private TitleLayoutCache mTitleLayouts;
+    private final ArrayDeque<TaskCardNode> mCardNodePool = new ArrayDeque<>();
+    private final TaskTransformEngine mTransformEngine = new TaskTransformEngine();
+    private int mFirstBoundIndex = -1;
+    private int mLastBoundIndex = -1;
 
     public RecentsView(Context context) { this(context, null); }
     public RecentsView(Context context, AttributeSet attrs) { this(context, attrs, 0); }
@@ -61,6 +111,15 @@ public class RecentsView extends FrameLayout {
     }
 
     private void init(Context context) {
+        mTaskViewPool = TaskViewPool.getInstance(context);
+        mRenderNodeMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                && RecentsConfig.get().renderNodeMode;
+        mCardPainter = TaskCardPainter.getInstance(context);
+        mTitleLayouts = TitleLayoutCache.getInstance(mCardPainter);
+        if (mRenderNodeMode) {
+            setWillNotDraw(false);
+            Log.i(TAG, "RecentsView: drawing cards with RenderNode");
+        }
         mScroller = new OverScroller(context);
         ViewConfiguration config = ViewConfiguration.get(context);
         mTouchSlop = config.getScaledTouchSlop();
@@ -83,25 +142,198 @@ public class RecentsView extends FrameLayout {
     public void setCallbacks(RecentsViewCallbacks callbacks) { mCallbacks = callbacks; }
 
     public void setTasks(List<Task> tasks) {
-        removeAllViews();
-        for (Task task : tasks) {
-            TaskView taskView = new TaskView(getContext());
-            taskView.bind(task);
-            taskView.setTag(task.key.id);
-            // 关键：添加时指定 wrap_content 的布局参数
-            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
-                    LayoutParams.WRAP_CONTENT,
-                    LayoutParams.WRAP_CONTENT
-            );
-            addView(taskView, params);
-        }
-        mActiveTaskIndex = getChildCount() > 0 ? 0 : -1;
+        recycleAllCards();
+        mTasks.clear();
+        mTasks.addAll(tasks);
+        mDismissedIndices.clear();
+        mActiveTaskIndex = mTasks.isEmpty() ? -1 : 0;
+        mCenteredTaskIndex = -1;
+        prefetchTitleLayouts();
+        updateVisibleRange(true);
         updateViewTransforms();
         scrollToActiveTask();
     }
 
-    public TaskView findTaskView(int taskId) {
-        return findViewWithTag(taskId);
+    /**
+     * 回到第一张卡片，不播放滚动动画。界面隐藏后调用，下次显示时从最近的任务开始
+     */
+    public void resetScroll() {
+        mScroller.abortAnimation();
+        if (mTasks.isEmpty()) return;
+        mActiveTaskIndex = 0;
+        scrollTo(0, 0);
+    }
+
+    /**
+     * 增量应用任务列表的变化，保留已绑定的卡片、缩略图和当前居中的任务
+     */
+    public void applyDiff(TaskListDiff diff) {
+        if (mTasks.isEmpty()) {
+            setTasks(diff.tasks);
+            return;
+        }
+        if (diff.isEmpty()) return;
+
+        for (Task task : diff.changed) {
+            TaskCard card = mBoundCards.get(task.key);
+            if (card != null) {
+                card.bind(task);
+            }
+        }
+        Task.TaskKey activeKey = mActiveTaskIndex >= 0 && mActiveTaskIndex < mTasks.size()
+                ? mTasks.get(mActiveTaskIndex).key : null;
+        // 正在删除的任务已不在加载的列表中，由删除动画结束或删除失败时处理，在此之前保留原来的位置
+        List<Task> tasks = new ArrayList<>(diff.tasks);
+        for (int i = 0; i < mTasks.size(); i++) {
+            Task task = mTasks.get(i);
+            if (isDismissing(task) && indexOfTask(tasks, task.key) == -1) {
+                tasks.add(Math.min(i, tasks.size()), task);
+            }
+        }
+        mTasks.clear();
+        mTasks.addAll(tasks);
+        prefetchTitleLayouts();
+        if (!diff.isStructural()) return;
+
+        for (Task task : diff.removed) {
+            if (isDismissing(task)) continue;
+            TaskCard card = mBoundCards.remove(task.key);
+            if (card != null) {
+                mDismissingCards.remove(card);
+                recycleCard(card);
+            }
+            if (mCallbacks != null) {
+                mCallbacks.onTaskViewRemoved(task);
+            }
+        }
+
+        int newActiveIndex = activeKey != null ? indexOfTask(activeKey) : -1;
+        if (mTasks.isEmpty()) {
+            mActiveTaskIndex = -1;
+        } else if (newActiveIndex != -1) {
+            mActiveTaskIndex = newActiveIndex;
+        } else {
+            mActiveTaskIndex = Math.max(0, Math.min(mActiveTaskIndex, mTasks.size() - 1));
+        }
+        // 直接跳到原来居中的任务，不播放滚动动画
+        mScroller.abortAnimation();
+        if (mActiveTaskIndex != -1) {
+            scrollTo(mActiveTaskIndex * (mTaskWidth + mTaskSpacing), 0);
+        }
+        updateVisibleRange(true);
+        updateViewTransforms();
+        invalidate();
+    }
+
+    /**
+     * 后台删除失败，把已经移除的任务放回删除前的位置，删除动画还没结束时直接取消动画。
+     * 当前居中的任务保持不变。返回任务所在的位置
+     */
+    public int restoreTask(Task task) {
+        Integer dismissedIndex = mDismissedIndices.remove(task.key);
+        int index = indexOfTask(task.key);
+        if (index != -1) {
+            TaskCard card = mBoundCards.get(task.key);
+            if (card != null && mDismissingCards.remove(card)) {
+                cancelCardAnimation(card);
+                mTransformEngine.invalidate(index);
+                applyTransform(card, index);
+            }
+            return index;
+        }
+
+        index = dismissedIndex != null ? Math.min(dismissedIndex, mTasks.size()) : mTasks.size();
+        mTasks.add(index, task);
+        if (mActiveTaskIndex == -1) {
+            mActiveTaskIndex = index;
+        } else if (index <= mActiveTaskIndex) {
+            mActiveTaskIndex++;
+        }
+        prefetchTitleLayouts();
+        mScroller.abortAnimation();
+        scrollTo(mActiveTaskIndex * (mTaskWidth + mTaskSpacing), 0);
+        updateVisibleRange(true);
+        updateViewTransforms();
+        invalidate();
+        return index;
+    }
+
+    /**
+     * 删除已经完成，不再需要记录任务原来的位置
+     */
+    public void onTasksRemoved(List<Task> tasks) {
+        for (Task task : tasks) {
+            mDismissedIndices.remove(task.key);
+        }
+    }
+
+    private boolean isDismissing(Task task) {
+        if (mDismissedIndices.containsKey(task.key)) return true;
+        TaskCard card = mBoundCards.get(task.key);
+        return card != null && mDismissingCards.contains(card);
+    }
+
+    /**
+     * 启动任务时的窗口动画：缩略图从卡片上的位置放大到全屏，目标应用绘制第一帧的时间被动画遮住。
+     * 没有缩略图时从卡片的位置放大，任务没有绑定卡片时返回null。
+     * 设备支持时，系统开始播放缩略图动画时在主线程调用onAnimationStarted，其他情况不会调用
+     */
+    public ActivityOptions createLaunchOptions(Task task, Runnable onAnimationStarted) {
+        TaskCard card = mBoundCards.get(task.key);
+        if (card == null || card.getWidth() <= 0 || card.getHeight() <= 0) return null;
+        int left = Math.round(card.getX()) - getScrollX();
+        int top = Math.round(card.getY()) - getScrollY();
+        Bitmap thumbnail = task.thumbnail;
+        if (thumbnail != null && !thumbnail.isRecycled()) {
+            RectF rect = new RectF();
+            mCardPainter.getThumbnailRect(thumbnail, card.getWidth(), card.getHeight(), rect);
+            Bitmap launchThumbnail = createLaunchThumbnail(thumbnail,
+                    Math.round(rect.width()), Math.round(rect.height()));
+            if (launchThumbnail != null) {
+                int startX = left + Math.round(rect.left);
+                int startY = top + Math.round(rect.top);
+                ActivityOptions options = SystemApiBridge.getInstance()
+                        .makeThumbnailScaleUpAnimation(this, launchThumbnail, startX, startY,
+                                onAnimationStarted);
+                if (options != null) {
+                    return options;
+                }
+                return ActivityOptions.makeThumbnailScaleUpAnimation(this, launchThumbnail,
+                        startX, startY);
+            }
+        }
+        return ActivityOptions.makeScaleUpAnimation(this, left, top,
+                card.getWidth(), card.getHeight());
+    }
+
+    /**
+     * 按卡片上显示的尺寸复制缩略图，原缩略图会被复用，不能直接交给系统
+     */
+    private static Bitmap createLaunchThumbnail(Bitmap thumbnail, int width, int height) {
+        if (width <= 0 || height <= 0) return null;
+        Bitmap bitmap = thumbnail;
+        if (thumbnail.getWidth() != width || thumbnail.getHeight() != height) {
+            bitmap = Bitmap.createScaledBitmap(thumbnail, width, height, true);
+        }
+        // Android 8.0起过渡动画的缩略图以GraphicBuffer传给系统，需要硬件位图
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            if (bitmap.getConfig() != Bitmap.Config.HARDWARE) {
+                bitmap = bitmap.copy(Bitmap.Config.HARDWARE, false);
+            }
+        } else if (bitmap == thumbnail) {
+            bitmap = thumbnail.copy(thumbnail.getConfig(), false);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 任务的缩略图加载完成，任务还绑定着卡片时刷新卡片
+     */
+    public void onTaskThumbnailLoaded(Task task) {
+        TaskCard card = mBoundCards.get(task.key);
+        if (card != null && card.getTask() == task) {
+            card.setThumbnail(task.thumbnail);
+        }
     }
 
     @Override
@@ -115,9 +347,18 @@ public class RecentsView extends FrameLayout {
         int height = getMeasuredHeight();
 
         // Calculate the desired task size based on the ratio of the final measured width.
-        mTaskWidth = (int) (width * 0.75f);
-        mTaskHeight = (int) (height * 0.8f);
+        int taskWidth = (int) (width * 0.75f);
+        int taskHeight = (int) (height * 0.8f);
+        if ((taskWidth != mTaskWidth || taskHeight != mTaskHeight) && mCallbacks != null) {
+            mCallbacks.onTaskSizeChanged(taskWidth, taskHeight);
+        }
+        boolean widthChanged = taskWidth != mTaskWidth;
+        mTaskWidth = taskWidth;
+        mTaskHeight = taskHeight;
         mTaskSpacing = mTaskWidth / 50;
+        if (widthChanged) {
+            prefetchTitleLayouts();
+        }
 
         // Re-measure all children with the new, correct, ratio-based size.
         // This overrides the initial WRAP_CONTENT measurement and enforces consistency.
@@ -132,68 +373,452 @@ public class RecentsView extends FrameLayout {
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
         super.onLayout(changed, left, top, right, bottom);
+        // 尺寸确定后才能计算可见范围
+        updateVisibleRange(changed);
         updateViewTransforms();
     }
 
+    /**
+     * 根据滚动位置计算可见的任务范围（两侧各多保留PREFETCH_CARDS张），
+     * 只为范围内的任务绑定卡片，范围外的卡片回收复用。
+     * 任务数量再多，同时存在的卡片也只有几个。
+     *
+     * @param force 任务列表变化后强制重新绑定
+     * @return 范围是否有变化
+     */
+    private boolean updateVisibleRange(boolean force) {
+        mTransformEngine.setGeometry(mTasks.size(), getWidth(), getHeight(),
+                mTaskWidth, mTaskHeight, mTaskSpacing);
+        int first = -1;
+        int last = -1;
+        if (mTaskWidth > 0 && getWidth() > 0) {
+            first = mTransformEngine.getFirstVisibleIndex(getScrollX(), PREFETCH_CARDS);
+            last = mTransformEngine.getLastVisibleIndex(getScrollX(), PREFETCH_CARDS);
+        }
+        if (!force && first == mFirstBoundIndex && last == mLastBoundIndex) {
+            return false;
+        }
+        mFirstBoundIndex = first;
+        mLastBoundIndex = last;
+        if (force) {
+            // 任务的下标可能已经变化，记录的变换值不再可靠
+            mTransformEngine.invalidateAll();
+        }
+
+        Iterator<Map.Entry<Task.TaskKey, TaskCard>> iterator = mBoundCards.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Task.TaskKey, TaskCard> entry = iterator.next();
+            TaskCard card = entry.getValue();
+            // 正在播放删除动画的卡片由动画结束时处理
+            if (mDismissingCards.contains(card)) continue;
+            int index = indexOfTask(entry.getKey());
+            if (index < first || index > last) {
+                iterator.remove();
+                recycleCard(card);
+            }
+        }
+        for (int i = first; i >= 0 && i <= last; i++) {
+            Task task = mTasks.get(i);
+            TaskCard card = mBoundCards.get(task.key);
+            if (card == null) {
+                card = bindCard(task);
+                mBoundCards.put(task.key, card);
+                mTransformEngine.invalidate(i);
+            } else if (!force) {
+                continue;
+            } else if (card instanceof TaskCardNode) {
+                // 卡片尺寸可能已经变化
+                ((TaskCardNode) card).setBounds(getPaddingLeft(), getPaddingTop(),
+                        mTaskWidth, mTaskHeight);
+            }
+            // 预取的卡片不在updateViewTransforms的计算范围内，绑定时写入完整的变换
+            applyTransform(card, i);
+        }
+        invalidate();
+        return true;
+    }
+
+    private TaskCard bindCard(Task task) {
+        if (mRenderNodeMode) {
+            TaskCardNode node = mCardNodePool.poll();
+            if (node == null) {
+                node = new TaskCardNode(this, mCardPainter);
+            }
+            node.setBounds(getPaddingLeft(), getPaddingTop(), mTaskWidth, mTaskHeight);
+            node.bind(task);
+            return node;
+        }
+        TaskView taskView = mTaskViewPool.acquire();
+        if (taskView.getLayoutParams() == null) {
+            // 关键：添加时指定 wrap_content 的布局参数
+            taskView.setLayoutParams(new FrameLayout.LayoutParams(
+                    LayoutParams.WRAP_CONTENT,
+                    LayoutParams.WRAP_CONTENT));
+        }
+        // 滚动过程中增减子视图，不触发整个RecentsView重新布局，直接按卡片尺寸测量和布局新视图
+        addViewInLayout(taskView, -1, taskView.getLayoutParams(), true);
+        if (mTaskWidth > 0) {
+            taskView.measure(
+                    MeasureSpec.makeMeasureSpec(mTaskWidth, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(mTaskHeight, MeasureSpec.EXACTLY));
+            taskView.layout(getPaddingLeft(), getPaddingTop(),
+                    getPaddingLeft() + mTaskWidth, getPaddingTop() + mTaskHeight);
+        }
+        // 布局后再绑定，标题布局按卡片宽度从缓存中取
+        taskView.bind(task);
+        taskView.setTag(task.key.id);
+        return taskView;
+    }
+
+    private void recycleCard(TaskCard card) {
+        cancelCardAnimation(card);
+        card.unbind();
+        if (card == mDownCard) {
+            mDownCard = null;
+        }
+        if (card instanceof TaskView) {
+            TaskView taskView = (TaskView) card;
+            taskView.setTag(null);
+            removeViewInLayout(taskView);
+            mTaskViewPool.release(taskView);
+        } else if (mCardNodePool.size() < MAX_POOLED_CARD_NODES) {
+            mCardNodePool.add((TaskCardNode) card);
+        }
+    }
+
+    private void recycleAllCards() {
+        for (TaskCard card : mBoundCards.values()) {
+            recycleCard(card);
+        }
+        mBoundCards.clear();
+        mDismissingCards.clear();
+        mClearingAll = false;
+        mFirstBoundIndex = -1;
+        mLastBoundIndex = -1;
+    }
+
+    @Override
+    public void removeAllViews() {
+        // 卡片都归还到复用池，任务列表保留，重新布局时再绑定
+        recycleAllCards();
+        super.removeAllViews();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        super.dispatchDraw(canvas);
+        if (!mRenderNodeMode || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q
+                || mBoundCards.isEmpty()) return;
+        // 与子视图一样按高度排序绘制并投射阴影
+        canvas.enableZ();
+        for (TaskCard card : mBoundCards.values()) {
+            ((TaskCardNode) card).draw(canvas);
+        }
+        canvas.disableZ();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // RecentsActivity销毁后卡片留给下一个实例使用
+        recycleAllCards();
+    }
+
+    /**
+     * 在后台为所有任务创建标题布局，绑定卡片时直接从缓存中取
+     */
+    private void prefetchTitleLayouts() {
+        if (mTaskWidth > 0) {
+            mTitleLayouts.prefetch(mTasks, mCardPainter.getTitleWidth(mTaskWidth));
+        }
+    }
+
+    private int indexOfTask(Task.TaskKey key) {
+        return indexOfTask(mTasks, key);
+    }
+
+    private static int indexOfTask(List<Task> tasks, Task.TaskKey key) {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i).key.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 只计算与屏幕相交的卡片，属性没有变化时不写入视图
+     */
     private void updateViewTransforms() {
+        if (mFirstBoundIndex < 0) return;
+        Trace.beginSection("RecentsView.updateViewTransforms");
         int scrollX = getScrollX();
-        int parentCenter = getWidth() / 2;
-
-        for (int i = 0; i < getChildCount(); i++) {
-            View child = getChildAt(i);
-            int childCenter = getChildLeft(i) + mTaskWidth / 2;
-            float distanceFromCenter = Math.abs(parentCenter - (childCenter - scrollX));
-            float progress = Math.min(1f, distanceFromCenter/MAX_VISUAL_DISTANCE);
+        int first = mTransformEngine.getFirstVisibleIndex(scrollX, 0);
+        int last = mTransformEngine.getLastVisibleIndex(scrollX, 0);
+        for (int i = first; i >= 0 && i <= last; i++) {
+            TaskCard card = mBoundCards.get(mTasks.get(i).key);
+            if (card != null) {
+                applyTransform(card, i);
+            }
+        }
+        Trace.endSection();
+    }
 
-            float alpha = interpolate(MAX_ALPHA, MIN_ALPHA, progress);
-            float z = interpolate(MAX_Z, MIN_Z, progress);
+    private void applyTransform(TaskCard card, int index) {
+        if (mDismissingCards.contains(card)) return;
+        mTransformEngine.apply(card, index, getScrollX(), !mIsBeingDragged || card != mDownCard);
+    }
 
-            child.setAlpha(alpha);
-            child.setTranslationZ(z);
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        updateCenteredTask();
+        updateVisibleRange(false);
+        updateViewTransforms();
+    }
 
-            child.setTranslationX(getChildLeft(i));
-            if (!mIsBeingDragged || child != mDownView) {
-                float yPosition = (getHeight() - mTaskHeight) / 2f;
-                child.setTranslationY(yPosition);
+    private void updateCenteredTask() {
+        int count = mTasks.size();
+        if (count == 0 || mTaskWidth == 0) return;
+        int index = Math.round((float) getScrollX() / (mTaskWidth + mTaskSpacing));
+        index = Math.max(0, Math.min(count - 1, index));
+        if (index != mCenteredTaskIndex) {
+            mCenteredTaskIndex = index;
+            if (mCallbacks != null) {
+                mCallbacks.onCenteredTaskChanged(index);
             }
         }
     }
 
-    private int getChildLeft(int i) { return (getWidth() - mTaskWidth) / 2 + i * (mTaskWidth + mTaskSpacing); }
-    private float interpolate(float start, float end, float progress) { return start + (end - start) * progress; }
+    private int getTaskLeft(int i) { return mTransformEngine.getSlotLeft(i); }
 
     private void handleTaskTap() {
-        if (mCallbacks != null && mDownView != null) {
-            mCallbacks.onTaskLaunched(((TaskView) mDownView).getTask());
+        if (mCallbacks != null && mDownCard != null) {
+            Task task = mDownCard.getTask();
+            if (task != null) {
+                mCallbacks.onTaskLaunched(task);
+            }
         }
     }
 
-    private void dismissTask(final int index) {
-        if (mCallbacks != null && index >= 0 && index < getChildCount()) {
-            final TaskView taskView = (TaskView) getChildAt(index);
-            mCallbacks.onTaskDismissed(taskView.getTask());
+    private void dismissTask(int index) {
+        if (mCallbacks == null || index < 0 || index >= mTasks.size()) return;
+        final Task task = mTasks.get(index);
+        final TaskCard card = mBoundCards.get(task.key);
+        if (card == null || mDismissingCards.contains(card)) return;
+        mDismissingCards.add(card);
+        mDismissedIndices.put(task.key, index);
+        mCallbacks.onTaskDismissed(task);
 
-            taskView.animate().translationY(-getHeight()).alpha(0).setDuration(300)
-                    .setListener(new AnimatorListenerAdapter() {
-                        @Override
-                        public void onAnimationEnd(Animator animation) {
-                            removeView(taskView);
-                            if (getChildCount() == 0) {
-                                mCallbacks.onAllTasksRemoved();
-                            } else {
-                                if (mActiveTaskIndex >= getChildCount()) {
-                                    mActiveTaskIndex = getChildCount() - 1;
-                                }
-                                updateViewTransforms();
-                                scrollToActiveTask();
-                            }
-                        }
-                    }).start();
+        animateCard(card, -getHeight(), 0, RecentsConfig.get().dismissAnimationMs, new Runnable() {
+            @Override
+            public void run() {
+                mDismissingCards.remove(card);
+                int removedIndex = indexOfTask(task.key);
+                if (removedIndex != -1) {
+                    mTasks.remove(removedIndex);
+                }
+                if (mBoundCards.get(task.key) == card) {
+                    mBoundCards.remove(task.key);
+                }
+                recycleCard(card);
+                if (mCallbacks == null) return;
+                mCallbacks.onTaskViewRemoved(task);
+                if (mTasks.isEmpty()) {
+                    mActiveTaskIndex = -1;
+                    mCallbacks.onAllTasksRemoved();
+                } else {
+                    if (mActiveTaskIndex >= mTasks.size()) {
+                        mActiveTaskIndex = mTasks.size() - 1;
+                    }
+                    updateVisibleRange(true);
+                    updateViewTransforms();
+                    scrollToActiveTask();
+                }
+            }
+        });
+    }
+
+    /**
+     * 清除所有可删除的任务。可见的卡片一起播放一个动画，屏幕外的卡片直接回收，
+     * 动画结束后一次性更新任务列表和布局，删除结果通过onTasksDismissed一次交给回调
+     */
+    public void dismissAllTasks() {
+        if (mCallbacks == null || mClearingAll || mTasks.isEmpty()) return;
+        final List<Task> tasks = new ArrayList<>();
+        List<TaskCard> visibleCards = new ArrayList<>();
+        int scrollX = getScrollX();
+        int firstVisible = mTransformEngine.getFirstVisibleIndex(scrollX, 0);
+        int lastVisible = mTransformEngine.getLastVisibleIndex(scrollX, 0);
+        for (int i = 0; i < mTasks.size(); i++) {
+            Task task = mTasks.get(i);
+            if (!task.isDismissable()) continue;
+            TaskCard card = mBoundCards.get(task.key);
+            if (card != null && mDismissingCards.contains(card)) continue;
+            tasks.add(task);
+            mDismissedIndices.put(task.key, i);
+            if (card == null) continue;
+            if (i >= firstVisible && i <= lastVisible) {
+                mDismissingCards.add(card);
+                visibleCards.add(card);
+            } else {
+                mBoundCards.remove(task.key);
+                recycleCard(card);
+            }
+        }
+        if (tasks.isEmpty()) return;
+
+        mClearingAll = true;
+        mScroller.abortAnimation();
+        mCallbacks.onTasksDismissed(tasks);
+        Runnable endAction = new Runnable() {
+            @Override
+            public void run() {
+                mClearingAll = false;
+                removeDismissedTasks(tasks);
+            }
+        };
+        // 卡片在动画中全部被回收或放回时动画取消，仍要结束清除，不能一直拦截触摸。
+        // 取消可能发生在遍历mBoundCards的过程中，移除任务推迟到下一次消息处理
+        Runnable cancelAction = new Runnable() {
+            @Override
+            public void run() {
+                mClearingAll = false;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        removeDismissedTasks(tasks);
+                    }
+                });
+            }
+        };
+        if (visibleCards.isEmpty()) {
+            endAction.run();
+        } else {
+            animateCards(visibleCards, -getHeight(), 0, RecentsConfig.get().dismissAnimationMs,
+                    endAction, cancelAction);
+        }
+    }
+
+    /**
+     * 清除动画结束后移除任务和卡片，只做一次范围更新，全部移除时只回调一次onAllTasksRemoved
+     */
+    private void removeDismissedTasks(List<Task> dismissed) {
+        // 删除失败已经放回、或已随任务列表更新移除的任务不再处理
+        List<Task> tasks = new ArrayList<>(dismissed.size());
+        for (Task task : dismissed) {
+            if (mDismissedIndices.containsKey(task.key)) {
+                tasks.add(task);
+            }
+        }
+        if (tasks.isEmpty()) return;
+        for (Task task : tasks) {
+            int index = indexOfTask(task.key);
+            if (index != -1) {
+                mTasks.remove(index);
+            }
+            TaskCard card = mBoundCards.remove(task.key);
+            if (card != null) {
+                mDismissingCards.remove(card);
+                recycleCard(card);
+            }
+        }
+        if (mCallbacks == null) return;
+        for (Task task : tasks) {
+            mCallbacks.onTaskViewRemoved(task);
+        }
+        if (mTasks.isEmpty()) {
+            mActiveTaskIndex = -1;
+            mCallbacks.onAllTasksRemoved();
+            return;
+        }
+        mActiveTaskIndex = Math.max(0, Math.min(mActiveTaskIndex, mTasks.size() - 1));
+        scrollTo(mActiveTaskIndex * (mTaskWidth + mTaskSpacing), 0);
+        updateVisibleRange(true);
+        updateViewTransforms();
+        invalidate();
+    }
+
+    /**
+     * 通过TaskCard的属性播放卡片的纵向位移和透明度动画，TaskView和RenderNode卡片共用。
+     * 卡片被回收时动画取消，endAction不会执行
+     */
+    private void animateCard(TaskCard card, float toY, float toAlpha, long duration,
+            Runnable endAction) {
+        animateCards(Collections.singletonList(card), toY, toAlpha, duration, endAction, null);
+    }
+
+    /**
+     * 用一个动画同时驱动一组卡片。回收其中的卡片只会把它移出这一组，
+     * 所有卡片都被回收时动画才取消，此时执行cancelAction而不执行endAction
+     */
+    private void animateCards(final List<TaskCard> cards, float toY, float toAlpha,
+            long duration, final Runnable endAction, final Runnable cancelAction) {
+        final int count = cards.size();
+        final float[] fromY = new float[count];
+        final float[] fromAlpha = new float[count];
+        for (int i = 0; i < count; i++) {
+            TaskCard card = cards.get(i);
+            cancelCardAnimation(card);
+            fromY[i] = card.getTranslationY();
+            fromAlpha[i] = card.getAlpha();
+        }
+        final float targetY = toY;
+        final float targetAlpha = toAlpha;
+        final ValueAnimator animator = ValueAnimator.ofFloat(0f, 1f);
+        animator.setDuration(duration);
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                float fraction = (float) animation.getAnimatedValue();
+                for (int i = 0; i < count; i++) {
+                    TaskCard card = cards.get(i);
+                    if (mCardAnimators.get(card) != animator) continue;
+                    card.setTranslationY(fromY[i] + (targetY - fromY[i]) * fraction);
+                    card.setAlpha(fromAlpha[i] + (targetAlpha - fromAlpha[i]) * fraction);
+                }
+            }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
+            private boolean mCancelled;
+
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                mCancelled = true;
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                for (TaskCard card : cards) {
+                    if (mCardAnimators.get(card) == animator) {
+                        mCardAnimators.remove(card);
+                    }
+                }
+                if (mCancelled) {
+                    if (cancelAction != null) {
+                        cancelAction.run();
+                    }
+                } else if (endAction != null) {
+                    endAction.run();
+                }
+            }
+        });
+        for (TaskCard card : cards) {
+            mCardAnimators.put(card, animator);
+        }
+        animator.start();
+    }
+
+    private void cancelCardAnimation(TaskCard card) {
+        Animator animator = mCardAnimators.remove(card);
+        // 一组卡片共用的动画在最后一张卡片移出时才取消
+        if (animator != null && !mCardAnimators.containsValue(animator)) {
+            animator.cancel();
         }
     }
 
     private void scrollToActiveTask() {
-        if (mActiveTaskIndex == -1 || getChildCount() == 0) return;
+        if (mActiveTaskIndex == -1 || mTasks.isEmpty()) return;
 
         int currentScrollX = getScrollX();
         int targetScroll = mActiveTaskIndex * (mTaskWidth + mTaskSpacing);
@@ -218,6 +843,7 @@ public class RecentsView extends FrameLayout {
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (mClearingAll) return true;
         final int action = ev.getAction();
         if ((action == MotionEvent.ACTION_MOVE) && (mIsBeingDragged)) return true;
 
@@ -225,6 +851,7 @@ public class RecentsView extends FrameLayout {
             case MotionEvent.ACTION_DOWN:
                 mLastMotionX = ev.getX();
                 mLastMotionY = ev.getY();
+                endFling();
                 mIsBeingDragged = !mScroller.isFinished();
                 if (!mIsBeingDragged) {
                     mScroller.abortAnimation();
@@ -247,23 +874,9 @@ public class RecentsView extends FrameLayout {
         return true;
     }
 
-    private boolean inChildArea(int i, View child, float touchX, float touchY) {
-        float childLeft = child.getX();
-        float childRight = child.getX() + child.getWidth();
-        float childTop = child.getY();
-        float childBottom = child.getY() + child.getHeight();
-
-        touchX += getScrollX();
-        touchY += getScrollY();
-
-        return touchX >= childLeft &&
-                touchX <= childRight &&
-                touchY >= childTop &&
-                touchY <= childBottom;
-    }
-
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
+        if (mClearingAll) return true;
         if (mVelocityTracker == null) mVelocityTracker = VelocityTracker.obtain();
         mVelocityTracker.addMovement(ev);
         mGestureDetector.onTouchEvent(ev);
@@ -275,15 +888,17 @@ public class RecentsView extends FrameLayout {
         switch (action & MotionEvent.ACTION_MASK) {
             case MotionEvent.ACTION_DOWN:
                 if (!mScroller.isFinished()) mScroller.abortAnimation();
+                endFling();
                 mLastMotionX = x;
                 mLastMotionY = y;
 
-                // Find the view under the touch
-                for (int i = getChildCount() - 1; i >= 0; i--) {
-                    View child = getChildAt(i);
-                    if (inChildArea(i, child, x, y)) {
-                        mDownView = child;
-                        mDownViewIndex = i;
+                // Find the card under the touch
+                for (int i = mFirstBoundIndex; i >= 0 && i <= mLastBoundIndex; i++) {
+                    TaskCard card = mBoundCards.get(mTasks.get(i).key);
+                    if (card == null || mDismissingCards.contains(card)) continue;
+                    if (card.containsPoint(x + getScrollX(), y + getScrollY())) {
+                        mDownCard = card;
+                        mDownTaskIndex = i;
                         break;
                     }
                 }
@@ -293,41 +908,44 @@ public class RecentsView extends FrameLayout {
                 float deltaY = mLastMotionY - y;
                 if (Math.abs(deltaX) > Math.abs(deltaY)) { // Horizontal scroll
                     scrollBy((int) deltaX, 0);
-                } else if (mDownView != null) { // Vertical dismiss
-                    float targetY = mDownView.getTranslationY() - deltaY;
+                } else if (mDownCard != null) { // Vertical dismiss
+                    float targetY = mDownCard.getTranslationY() - deltaY;
                     float bottomY = (getHeight() - mTaskHeight) / 2f;
-                    mDownView.setTranslationY(Math.min(targetY, bottomY));
+                    mDownCard.setTranslationY(Math.min(targetY, bottomY));
+                    mTransformEngine.invalidate(mDownTaskIndex);
                     // 添加透明度渐变效果
                     if (targetY < bottomY) {
                         float swipeDistance = bottomY - targetY;
                         float maxSwipeDistance = mTaskHeight * 0.33f; // 最大滑动距离为卡片高度的33%
                         float progress = Math.min(1.0f, swipeDistance / maxSwipeDistance);
                         float alpha = 1.0f - (progress * 0.3f);
-                        mDownView.setAlpha(alpha);
+                        mDownCard.setAlpha(alpha);
                     }
                 }
                 mLastMotionX = x;
                 mLastMotionY = y;
                 break;
             case MotionEvent.ACTION_UP:
-                if (mDownView != null &&
-                        Math.abs(mDownView.getTranslationY() - (getHeight() - mTaskHeight) / 2f)
+                if (mDownCard != null &&
+                        Math.abs(mDownCard.getTranslationY() - (getHeight() - mTaskHeight) / 2f)
                                 > mTaskHeight / 3f) {
-                    dismissTask(mDownViewIndex);
+                    dismissTask(mDownTaskIndex);
                 } else {
                     // 恢复卡片的透明度和缩放
-                    if (mDownView != null) {
+                    if (mDownCard != null) {
                         float yPosition = (getHeight() - mTaskHeight) / 2f;
-                        mDownView.setTranslationY(yPosition);
-                        mDownView.animate().alpha(1.0f).setDuration(200).start();
-                        mDownView = null;
+                        mDownCard.setTranslationY(yPosition);
+                        animateCard(mDownCard, yPosition, 1.0f,
+                                RecentsConfig.get().restoreAnimationMs, null);
+                        mTransformEngine.invalidate(mDownTaskIndex);
+                        mDownCard = null;
                     }
                     flingAndSnap();
                 }
                 // Fallthrough
             case MotionEvent.ACTION_CANCEL:
                 mIsBeingDragged = false;
-                mDownView = null;
+                mDownCard = null;
                 if (mVelocityTracker != null) {
                     mVelocityTracker.recycle();
                     mVelocityTracker = null;
@@ -338,15 +956,14 @@ public class RecentsView extends FrameLayout {
     }
 
     private void flingAndSnap() {
-        if (getChildCount() == 0) return;
+        if (mTasks.isEmpty()) return;
 
         final VelocityTracker velocityTracker = mVelocityTracker;
         velocityTracker.computeCurrentVelocity(1000, mMaximumVelocity);
         int initialVelocity = (int) velocityTracker.getXVelocity();
 
         int currentScrollX = getScrollX();
-        int maxScrollX = getChildCount() > 0 ?
-                getChildLeft(getChildCount() - 1) - getChildLeft(0) : 0;
+        int maxScrollX = getTaskLeft(mTasks.size() - 1) - getTaskLeft(0);
 
         // Use scroller to predict final position
         mScroller.fling(currentScrollX, 0,
@@ -359,9 +976,8 @@ public class RecentsView extends FrameLayout {
         int nearestIndex = -1;
         int minDistance = Integer.MAX_VALUE;
 
-        for (int i = 0; i < getChildCount(); i++) {
-            // Log.i(TAG, String.format("%d: childLeft: %d", i, getChildLeft(i)));
-            int childCenter = getChildLeft(i) + mTaskWidth / 2;
+        for (int i = 0; i < mTasks.size(); i++) {
+            int childCenter = getTaskLeft(i) + mTaskWidth / 2;
             int distance = Math.abs(childCenter - (predictedFinalX + center));
             if (distance < minDistance) {
                 minDistance = distance;
@@ -370,6 +986,11 @@ public class RecentsView extends FrameLayout {
         }
 
         if (nearestIndex != -1) {
+            int fromIndex = mCenteredTaskIndex != -1 ? mCenteredTaskIndex : mActiveTaskIndex;
+            if (mCallbacks != null && fromIndex != -1 && fromIndex != nearestIndex) {
+                mFlinging = true;
+                mCallbacks.onFlingStarted(fromIndex, nearestIndex);
+            }
             mActiveTaskIndex = nearestIndex;
             scrollToActiveTask();
         }
@@ -378,9 +999,20 @@ public class RecentsView extends FrameLayout {
     @Override
     public void computeScroll() {
         if (mScroller.computeScrollOffset()) {
+            // 变换在onScrollChanged中更新
             scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
-            updateViewTransforms();
             postInvalidate();
+        } else {
+            // 滚动已停下或被中止，不论停在哪里
+            endFling();
+        }
+    }
+
+    private void endFling() {
+        if (!mFlinging) return;
+        mFlinging = false;
+        if (mCallbacks != null) {
+            mCallbacks.onFlingEnded();
         }
     }
 }
\ No newline at end of file
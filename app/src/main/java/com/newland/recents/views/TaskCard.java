@@ -0,0 +1,51 @@
+package com.newland.recents.views;
+
+import android.graphics.Bitmap;
+
+import com.newland.recents.model.Task;
+
+/**
+ * RecentsView中的一张任务卡片，可以是一个TaskView，也可以是RecentsView自己绘制的TaskCardNode。
+ * 滚动变换、拖动删除和点击判断只通过这个接口操作卡片，两种绘制方式共用同一套逻辑。
+ */
+interface TaskCard {
+
+    void bind(Task task);
+
+    /**
+     * 卡片回收后释放对任务和缩略图的引用，缩略图可能会被复用
+     */
+    void unbind();
+
+    Task getTask();
+
+    void setThumbnail(Bitmap thumbnail);
+
+    float getAlpha();
+
+    void setAlpha(float alpha);
+
+    float getTranslationY();
+
+    /**
+     * 卡片左上角在RecentsView内容坐标中的位置，包含位移
+     */
+    float getX();
+
+    float getY();
+
+    int getWidth();
+
+    int getHeight();
+
+    void setTranslationX(float translationX);
+
+    void setTranslationY(float translationY);
+
+    void setTranslationZ(float translationZ);
+
+    /**
+     * 点是否落在卡片内，坐标为RecentsView的内容坐标（已加上滚动偏移）
+     */
+    boolean containsPoint(float x, float y);
+}
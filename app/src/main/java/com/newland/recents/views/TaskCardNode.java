@@ -0,0 +1,209 @@
+package com.newland.recents.views;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Build;
+import android.text.Layout;
+import android.view.View;
+
+import com.newland.recents.model.Task;
+
+/**
+ * RenderNode绘制方式下的一张卡片。卡片内容只在绑定、缩略图变化或尺寸变化时录制一次，
+ * 滚动时只修改RenderNode的位移、透明度和高度，由宿主RecentsView在dispatchDraw中绘制，
+ * 不经过View树的遍历、测量和布局。
+ * 只在主线程使用，RecentsView只在Android 10及以上创建。
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+class TaskCardNode implements TaskCard {
+
+    private final View mHost;
+    private final TaskCardPainter mPainter;
+    private final TitleLayoutCache mTitleLayouts;
+    private final RenderNode mNode = new RenderNode("TaskCard");
+    private final Outline mOutline = new Outline();
+
+    private Task mTask;
+    private Layout mTitleLayout;
+    private int mLeft;
+    private int mTop;
+    private int mWidth;
+    private int mHeight;
+
+    TaskCardNode(View host, TaskCardPainter painter) {
+        mHost = host;
+        mPainter = painter;
+        mTitleLayouts = TitleLayoutCache.getInstance(painter);
+        mNode.setClipToOutline(false);
+    }
+
+    /**
+     * 设置卡片在宿主中的位置和尺寸，尺寸变化时重新录制
+     */
+    void setBounds(int left, int top, int width, int height) {
+        if (left == mLeft && top == mTop && width == mWidth && height == mHeight) return;
+        boolean resized = width != mWidth;
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+        mNode.setPosition(left, top, left + width, top + height);
+        mPainter.getOutline(width, height, mOutline);
+        mNode.setOutline(mOutline);
+        if (mTask != null) {
+            if (resized) {
+                updateTitleLayout();
+            }
+            record();
+        }
+    }
+
+    @Override
+    public void bind(Task task) {
+        mTask = task;
+        updateTitleLayout();
+        record();
+    }
+
+    @Override
+    public void unbind() {
+        mTask = null;
+        mTitleLayout = null;
+        mNode.discardDisplayList();
+    }
+
+    @Override
+    public Task getTask() {
+        return mTask;
+    }
+
+    @Override
+    public void setThumbnail(Bitmap thumbnail) {
+        // 绘制时读取task.thumbnail，这里只需要重新录制
+        if (thumbnail != null && mTask != null) {
+            record();
+        }
+    }
+
+    @Override
+    public float getAlpha() {
+        return mNode.getAlpha();
+    }
+
+    @Override
+    public void setAlpha(float alpha) {
+        if (mNode.setAlpha(alpha)) {
+            mHost.invalidate();
+        }
+    }
+
+    @Override
+    public float getTranslationY() {
+        return mNode.getTranslationY();
+    }
+
+    @Override
+    public float getX() {
+        return mLeft + mNode.getTranslationX();
+    }
+
+    @Override
+    public float getY() {
+        return mTop + mNode.getTranslationY();
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void setTranslationX(float translationX) {
+        if (mNode.setTranslationX(translationX)) {
+            mHost.invalidate();
+        }
+    }
+
+    @Override
+    public void setTranslationY(float translationY) {
+        if (mNode.setTranslationY(translationY)) {
+            mHost.invalidate();
+        }
+    }
+
+    @Override
+    public void setTranslationZ(float translationZ) {
+        if (mNode.setTranslationZ(translationZ)) {
+            mHost.invalidate();
+        }
+    }
+
+    @Override
+    public boolean containsPoint(float x, float y) {
+        float left = getX();
+        float top = getY();
+        return x >= left && x <= left + mWidth && y >= top && y <= top + mHeight;
+    }
+
+    /**
+     * 在宿主的绘制过程中调用。硬件加速时直接引用录制好的RenderNode，否则按当前属性软件绘制
+     */
+    void draw(Canvas canvas) {
+        if (mTask == null) return;
+        if (canvas.isHardwareAccelerated() && canvas instanceof RecordingCanvas) {
+            if (!mNode.hasDisplayList()) {
+                record();
+            }
+            ((RecordingCanvas) canvas).drawRenderNode(mNode);
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(mLeft + mNode.getTranslationX(), mTop + mNode.getTranslationY());
+        if (mNode.getAlpha() < 1f) {
+            canvas.saveLayerAlpha(0, 0, mWidth, mHeight, (int) (mNode.getAlpha() * 255));
+        }
+        mPainter.draw(canvas, mTask, mTitleLayout, mWidth, mHeight);
+        canvas.restoreToCount(saveCount);
+    }
+
+    /**
+     * 从缓存中取标题布局，还没有创建好时在后台创建，完成后重新录制
+     */
+    private void updateTitleLayout() {
+        mTitleLayout = null;
+        if (mTask == null || mWidth <= 0) return;
+        final Task task = mTask;
+        final int width = mPainter.getTitleWidth(mWidth);
+        mTitleLayout = mTitleLayouts.get(task.title, width);
+        if (mTitleLayout != null) return;
+        mTitleLayouts.request(task.title, width, new TitleLayoutCache.Callback() {
+            @Override
+            public void onTitleLayoutReady(Layout layout) {
+                if (mTask == task && mPainter.getTitleWidth(mWidth) == width) {
+                    mTitleLayout = layout;
+                    record();
+                }
+            }
+        });
+    }
+
+    private void record() {
+        if (mWidth <= 0 || mHeight <= 0) return;
+        RecordingCanvas canvas = mNode.beginRecording(mWidth, mHeight);
+        try {
+            mPainter.draw(canvas, mTask, mTitleLayout, mWidth, mHeight);
+        } finally {
+            mNode.endRecording();
+        }
+        mHost.invalidate();
+    }
+}
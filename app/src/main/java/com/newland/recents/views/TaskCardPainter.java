@@ -0,0 +1,176 @@
+package com.newland.recents.views;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.TypedValue;
+
+import com.newland.recents.R;
+import com.newland.recents.model.Task;
+
+/**
+ * 直接在Canvas上绘制一张任务卡片：背景、缩略图、头部背景、图标和标题，卡片四周留出task_margin。
+ * TaskView和TaskCardNode共用同一个实例。
+ * 绘制时不分配对象，只在主线程中绘制；标题布局可以在后台线程创建。
+ */
+class TaskCardPainter {
+
+    private final int mMargin;
+    private final float mCornerRadius;
+    private final int mHeaderPadding;
+    private final int mIconSize;
+    private final int mIconMargin;
+    private final int mHeaderHeight;
+
+    private final Paint mBackgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mThumbnailBackgroundPaint = new Paint();
+    private final Paint mHeaderPaint = new Paint();
+    private final Paint mHeaderBorderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final TextPaint mTitlePaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+    private final RectF mTmpRectF = new RectF();
+    private final Rect mTmpRect = new Rect();
+
+    private static TaskCardPainter sInstance;
+
+    static synchronized TaskCardPainter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TaskCardPainter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private TaskCardPainter(Context context) {
+        Resources res = context.getResources();
+        mMargin = res.getDimensionPixelSize(R.dimen.task_margin);
+        mCornerRadius = res.getDimension(R.dimen.task_corner_radius);
+        mHeaderPadding = res.getDimensionPixelSize(R.dimen.task_header_padding);
+        mIconSize = res.getDimensionPixelSize(R.dimen.task_icon_size);
+        mIconMargin = res.getDimensionPixelSize(R.dimen.task_icon_margin);
+        mHeaderHeight = mIconSize + mHeaderPadding * 2;
+        float borderWidth = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 0.5f,
+                res.getDisplayMetrics());
+
+        mBackgroundPaint.setColor(res.getColor(R.color.task_background, null));
+        mBorderPaint.setStyle(Paint.Style.STROKE);
+        mBorderPaint.setStrokeWidth(borderWidth);
+        mBorderPaint.setColor(0x0A000000);
+        mThumbnailBackgroundPaint.setColor(res.getColor(R.color.task_thumbnail_background, null));
+        mHeaderPaint.setColor(res.getColor(R.color.task_header_background, null));
+        mHeaderBorderPaint.setStyle(Paint.Style.STROKE);
+        mHeaderBorderPaint.setStrokeWidth(borderWidth);
+        mHeaderBorderPaint.setColor(0x1A000000);
+
+        mTitlePaint.setColor(res.getColor(R.color.task_title_color, null));
+        mTitlePaint.setTextSize(res.getDimension(R.dimen.task_title_text_size));
+        mTitlePaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+    }
+
+    TextPaint getTitlePaint() {
+        return mTitlePaint;
+    }
+
+    /**
+     * 卡片宽度为width时标题可用的宽度
+     */
+    int getTitleWidth(int width) {
+        int titleWidth = width - mMargin * 2 - mHeaderPadding * 2 - mIconSize - mIconMargin;
+        return Math.max(0, titleWidth);
+    }
+
+    /**
+     * 创建单行、超长时以省略号结尾的标题布局。在后台线程调用时要使用画笔的副本
+     */
+    static Layout createTitleLayout(CharSequence title, int width, TextPaint paint) {
+        CharSequence text = title != null ? title : "";
+        return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                .setMaxLines(1)
+                .setEllipsize(TextUtils.TruncateAt.END)
+                .setEllipsizedWidth(width)
+                .setIncludePad(false)
+                .build();
+    }
+
+    /**
+     * 卡片阴影使用的轮廓
+     */
+    void getOutline(int width, int height, Outline outline) {
+        outline.setRoundRect(mMargin, mMargin, width - mMargin, height - mMargin, mCornerRadius);
+    }
+
+    /**
+     * 缩略图在(0, 0, width, height)大小的卡片中按fitCenter绘制的位置
+     */
+    void getThumbnailRect(Bitmap thumbnail, int width, int height, RectF out) {
+        int left = mMargin;
+        int top = mMargin;
+        int right = width - mMargin;
+        int bottom = height - mMargin;
+        float scale = Math.min((float) (right - left) / thumbnail.getWidth(),
+                (float) (bottom - top) / thumbnail.getHeight());
+        float drawWidth = thumbnail.getWidth() * scale;
+        float drawHeight = thumbnail.getHeight() * scale;
+        float drawLeft = left + (right - left - drawWidth) / 2f;
+        float drawTop = top + (bottom - top - drawHeight) / 2f;
+        out.set(drawLeft, drawTop, drawLeft + drawWidth, drawTop + drawHeight);
+    }
+
+    /**
+     * 在(0, 0, width, height)范围内绘制卡片，titleLayout为null时不绘制标题
+     */
+    void draw(Canvas canvas, Task task, Layout titleLayout, int width, int height) {
+        int left = mMargin;
+        int top = mMargin;
+        int right = width - mMargin;
+        int bottom = height - mMargin;
+        if (right <= left || bottom <= top) return;
+
+        mTmpRectF.set(left, top, right, bottom);
+        canvas.drawRoundRect(mTmpRectF, mCornerRadius, mCornerRadius, mBackgroundPaint);
+
+        // 缩略图按fitCenter完整显示
+        canvas.drawRect(left, top, right, bottom, mThumbnailBackgroundPaint);
+        Bitmap thumbnail = task != null ? task.thumbnail : null;
+        if (thumbnail != null && !thumbnail.isRecycled()) {
+            getThumbnailRect(thumbnail, width, height, mTmpRectF);
+            canvas.drawBitmap(thumbnail, null, mTmpRectF, mBitmapPaint);
+        }
+
+        // 头部覆盖在缩略图上方
+        int headerBottom = Math.min(bottom, top + mHeaderHeight);
+        canvas.drawRect(left, top, right, headerBottom, mHeaderPaint);
+        canvas.drawRect(left, top, right, headerBottom, mHeaderBorderPaint);
+
+        int iconLeft = left + mHeaderPadding;
+        int iconTop = top + mHeaderPadding;
+        Bitmap icon = task != null ? task.icon : null;
+        if (icon != null && !icon.isRecycled()) {
+            mTmpRect.set(iconLeft, iconTop, iconLeft + mIconSize, iconTop + mIconSize);
+            canvas.drawBitmap(icon, null, mTmpRect, mBitmapPaint);
+        }
+
+        if (titleLayout != null) {
+            int titleLeft = iconLeft + mIconSize + mIconMargin;
+            float titleTop = top + (mHeaderHeight - titleLayout.getHeight()) / 2f;
+            canvas.save();
+            canvas.translate(titleLeft, titleTop);
+            titleLayout.draw(canvas);
+            canvas.restore();
+        }
+
+        mTmpRectF.set(left, top, right, bottom);
+        canvas.drawRoundRect(mTmpRectF, mCornerRadius, mCornerRadius, mBorderPaint);
+    }
+}
@@ -0,0 +1,155 @@
+package com.newland.recents.views;
+
+import java.util.Arrays;
+
+/**
+ * RecentsView卡片的变换计算。每张卡片的水平位置预先算好保存在数组中，
+ * 滚动时只计算与屏幕相交的卡片；每个属性记录上一次写入的值，变化超过阈值时才写入卡片，
+ * 避免每帧调用setter使卡片的RenderNode失效。
+ * 卡片按任务下标记录已写入的值，卡片重新绑定到其他任务或任务列表变化后需要调用invalidate。
+ * 只在主线程使用。
+ */
+class TaskTransformEngine {
+
+    private static final float MAX_VISUAL_DISTANCE = 720f;
+    private static final float MAX_Z = 20f;  // 中心卡片高度
+    private static final float MIN_Z = 0f;   // 两边卡片最低高度
+    private static final float MIN_ALPHA = 0.8f;
+    private static final float MAX_ALPHA = 1.0f;
+
+    // 低于这些变化量时不写入视图，透明度的阈值约为一个8位颜色级别的一半
+    private static final float ALPHA_EPSILON = 0.002f;
+    private static final float Z_EPSILON = 0.1f;
+    private static final float POSITION_EPSILON = 0.5f;
+
+    private int mCount;
+    private int mViewWidth;
+    private int mViewHeight;
+    private int mTaskWidth;
+    private int mTaskHeight;
+    private int mStride;
+
+    private int[] mSlotLeft = new int[0];
+    // 已写入视图的值，NaN表示未知
+    private float[] mAppliedAlpha = new float[0];
+    private float[] mAppliedZ = new float[0];
+    private float[] mAppliedX = new float[0];
+    private float[] mAppliedY = new float[0];
+
+    /**
+     * 更新卡片数量和尺寸，有变化时重新计算所有卡片的位置
+     */
+    void setGeometry(int count, int viewWidth, int viewHeight, int taskWidth, int taskHeight,
+            int spacing) {
+        int stride = taskWidth + spacing;
+        if (count == mCount && viewWidth == mViewWidth && viewHeight == mViewHeight
+                && taskWidth == mTaskWidth && taskHeight == mTaskHeight && stride == mStride) {
+            return;
+        }
+        mCount = count;
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mTaskWidth = taskWidth;
+        mTaskHeight = taskHeight;
+        mStride = stride;
+
+        if (mSlotLeft.length < count) {
+            int capacity = Math.max(count, mSlotLeft.length * 2);
+            mSlotLeft = new int[capacity];
+            mAppliedAlpha = new float[capacity];
+            mAppliedZ = new float[capacity];
+            mAppliedX = new float[capacity];
+            mAppliedY = new float[capacity];
+        }
+        int base = (viewWidth - taskWidth) / 2;
+        for (int i = 0; i < count; i++) {
+            mSlotLeft[i] = base + i * stride;
+        }
+        invalidateAll();
+    }
+
+    int getSlotLeft(int index) {
+        return mSlotLeft[index];
+    }
+
+    /**
+     * 与屏幕相交的第一张卡片，margin为两侧额外包含的卡片数，没有卡片时返回-1
+     */
+    int getFirstVisibleIndex(int scrollX, int margin) {
+        if (mCount == 0 || mStride == 0) return -1;
+        // 卡片i的左边缘在屏幕上的位置为 mSlotLeft[i] - scrollX
+        int halfSpan = (mViewWidth + mTaskWidth) / 2;
+        int first = (int) Math.floor((float) (scrollX - halfSpan) / mStride) + 1 - margin;
+        return Math.max(0, Math.min(mCount - 1, first));
+    }
+
+    /**
+     * 与屏幕相交的最后一张卡片，margin为两侧额外包含的卡片数，没有卡片时返回-1
+     */
+    int getLastVisibleIndex(int scrollX, int margin) {
+        if (mCount == 0 || mStride == 0) return -1;
+        int halfSpan = (mViewWidth + mTaskWidth) / 2;
+        int last = (int) Math.ceil((float) (scrollX + halfSpan) / mStride) - 1 + margin;
+        return Math.max(0, Math.min(mCount - 1, last));
+    }
+
+    /**
+     * 卡片重新绑定或被外部修改了属性（例如拖动删除）后，下一次apply写入全部属性
+     */
+    void invalidate(int index) {
+        if (index < 0 || index >= mCount) return;
+        mAppliedAlpha[index] = Float.NaN;
+        mAppliedZ[index] = Float.NaN;
+        mAppliedX[index] = Float.NaN;
+        mAppliedY[index] = Float.NaN;
+    }
+
+    void invalidateAll() {
+        Arrays.fill(mAppliedAlpha, Float.NaN);
+        Arrays.fill(mAppliedZ, Float.NaN);
+        Arrays.fill(mAppliedX, Float.NaN);
+        Arrays.fill(mAppliedY, Float.NaN);
+    }
+
+    /**
+     * 按滚动位置计算卡片的透明度和高度，只写入有变化的属性
+     *
+     * @param updateY 为false时不修改纵向位置，用于正在被拖动的卡片
+     */
+    void apply(TaskCard card, int index, int scrollX, boolean updateY) {
+        int childCenter = mSlotLeft[index] + mTaskWidth / 2;
+        float distanceFromCenter = Math.abs(mViewWidth / 2 - (childCenter - scrollX));
+        float progress = Math.min(1f, distanceFromCenter / MAX_VISUAL_DISTANCE);
+
+        float alpha = interpolate(MAX_ALPHA, MIN_ALPHA, progress);
+        if (changed(mAppliedAlpha[index], alpha, ALPHA_EPSILON)) {
+            card.setAlpha(alpha);
+            mAppliedAlpha[index] = alpha;
+        }
+        float z = interpolate(MAX_Z, MIN_Z, progress);
+        if (changed(mAppliedZ[index], z, Z_EPSILON)) {
+            card.setTranslationZ(z);
+            mAppliedZ[index] = z;
+        }
+        float x = mSlotLeft[index];
+        if (changed(mAppliedX[index], x, POSITION_EPSILON)) {
+            card.setTranslationX(x);
+            mAppliedX[index] = x;
+        }
+        if (updateY) {
+            float y = (mViewHeight - mTaskHeight) / 2f;
+            if (changed(mAppliedY[index], y, POSITION_EPSILON)) {
+                card.setTranslationY(y);
+                mAppliedY[index] = y;
+            }
+        }
+    }
+
+    private static boolean changed(float applied, float value, float epsilon) {
+        return Float.isNaN(applied) || Math.abs(applied - value) > epsilon;
+    }
+
+    private static float interpolate(float start, float end, float progress) {
+        return start + (end - start) * progress;
+    }
+}
@@ -2,22 +2,26 @@ package com.newland.recents.views;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Outline;
+import android.text.Layout;
 import android.util.AttributeSet;
-import android.view.LayoutInflater;
-import android.widget.FrameLayout;
-import android.widget.ImageView;
-import android.widget.TextView;
+import android.view.View;
+import android.view.ViewOutlineProvider;
 
-import com.newland.recents.R;
 import com.newland.recents.model.Task;
 
-public class TaskView extends FrameLayout {
+/**
+ * 任务卡片。没有子视图，缩略图、头部、图标和标题都由TaskCardPainter在onDraw中绘制；
+ * 标题布局在后台线程中创建并缓存，重新绑定只会重绘，不会请求重新布局。
+ */
+public class TaskView extends View implements TaskCard {
 
-    private Task mTask;
+    private final TaskCardPainter mPainter;
+    private final TitleLayoutCache mTitleLayouts;
 
-    private ImageView mThumbnailView;
-    private ImageView mIconView;
-    private TextView mTitleView;
+    private Task mTask;
+    private Layout mTitleLayout;
 
     public TaskView(Context context) {
         this(context, null);
@@ -29,27 +33,89 @@ public class TaskView extends FrameLayout {
 
     public TaskView(Context context, AttributeSet attrs, int defStyleAttr) {
         super(context, attrs, defStyleAttr);
-        LayoutInflater.from(context).inflate(R.layout.task_item, this, true);
-        mThumbnailView = findViewById(R.id.task_thumbnail);
-        mIconView = findViewById(R.id.task_icon);
-        mTitleView = findViewById(R.id.task_title);
+        mPainter = TaskCardPainter.getInstance(context);
+        mTitleLayouts = TitleLayoutCache.getInstance(mPainter);
+        setOutlineProvider(new ViewOutlineProvider() {
+            @Override
+            public void getOutline(View view, Outline outline) {
+                mPainter.getOutline(view.getWidth(), view.getHeight(), outline);
+            }
+        });
     }
 
+    /**
+     * 绑定任务，TaskView会被回收复用，没有图标或缩略图时也会清掉上一个任务留下的内容
+     */
+    @Override
     public void bind(Task task) {
         mTask = task;
-        mTitleView.setText(task.title);
-        if (task.icon != null) {
-            mIconView.setImageDrawable(task.icon);
-        }
+        setContentDescription(task.title);
+        updateTitleLayout();
+        invalidate();
     }
 
+    /**
+     * 卡片移除或回收后释放对任务和缩略图的引用，缩略图可能会被复用
+     */
+    @Override
+    public void unbind() {
+        mTask = null;
+        mTitleLayout = null;
+        setContentDescription(null);
+        invalidate();
+    }
+
+    @Override
     public Task getTask() {
         return mTask;
     }
 
+    @Override
     public void setThumbnail(Bitmap thumbnail) {
+        // 绘制时读取task.thumbnail，这里只需要重绘
         if (thumbnail != null) {
-            mThumbnailView.setImageBitmap(thumbnail);
+            invalidate();
+        }
+    }
+
+    @Override
+    public boolean containsPoint(float x, float y) {
+        return x >= getX() && x <= getX() + getWidth()
+                && y >= getY() && y <= getY() + getHeight();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w != oldw) {
+            updateTitleLayout();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mTask == null) return;
+        mPainter.draw(canvas, mTask, mTitleLayout, getWidth(), getHeight());
+    }
+
+    /**
+     * 从缓存中取标题布局，还没有创建好时在后台创建，完成后重绘
+     */
+    private void updateTitleLayout() {
+        mTitleLayout = null;
+        if (mTask == null || getWidth() == 0) return;
+        final Task task = mTask;
+        final int width = mPainter.getTitleWidth(getWidth());
+        mTitleLayout = mTitleLayouts.get(task.title, width);
+        if (mTitleLayout != null) return;
+        mTitleLayouts.request(task.title, width, new TitleLayoutCache.Callback() {
+            @Override
+            public void onTitleLayoutReady(Layout layout) {
+                if (mTask == task && mPainter.getTitleWidth(getWidth()) == width) {
+                    mTitleLayout = layout;
+                    invalidate();
+                }
+            }
+        });
+    }
+}
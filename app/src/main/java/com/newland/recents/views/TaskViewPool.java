@@ -0,0 +1,99 @@
+package com.newland.recents.views;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+
+import com.newland.recents.R;
+import com.newland.recents.utils.RecentsConfig;
+
+import java.util.ArrayDeque;
+
+/**
+ * 进程级的TaskView复用池。进程启动或收到预加载信号后，在主线程空闲时预先创建若干TaskView，
+ * 显示最近任务时直接取用，进场动画期间不再创建卡片。
+ * TaskView是自绘的单个View，创建时只读取画笔和尺寸，每次空闲创建一个即可，不需要后台线程。
+ * 卡片使用RecentsTheme，不持有Activity，可以跨RecentsActivity实例复用。
+ * 所有方法都在主线程调用。
+ */
+public class TaskViewPool {
+    private static final String TAG = "TaskViewPool";
+
+    private static TaskViewPool sInstance;
+
+    private final Context mContext;
+    private final ArrayDeque<TaskView> mPool = new ArrayDeque<>();
+    private final int mPoolSize;
+
+    private boolean mIdleHandlerAdded;
+
+    private TaskViewPool(Context context) {
+        mContext = new ContextThemeWrapper(context.getApplicationContext(), R.style.RecentsTheme);
+        // 预先创建的卡片数，默认为可见的三张加上两侧各一张预取的卡片
+        mPoolSize = RecentsConfig.get().taskViewPoolSize;
+    }
+
+    public static synchronized TaskViewPool getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TaskViewPool(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * 在主线程空闲时补足复用池，每次空闲只创建一个
+     */
+    public void warmUp() {
+        if (mIdleHandlerAdded || mPool.size() >= mPoolSize) return;
+        mIdleHandlerAdded = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (mPool.size() < mPoolSize) {
+                    mPool.add(new TaskView(mContext));
+                }
+                if (mPool.size() < mPoolSize) {
+                    return true;
+                }
+                mIdleHandlerAdded = false;
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 取出一个未绑定的TaskView，复用池为空时直接创建
+     */
+    public TaskView acquire() {
+        TaskView taskView = mPool.poll();
+        if (taskView == null) {
+            taskView = new TaskView(mContext);
+        }
+        return taskView;
+    }
+
+    /**
+     * 归还已解绑并从父视图移除的TaskView，复用池已满时丢弃
+     */
+    public void release(TaskView taskView) {
+        if (taskView.getParent() != null) {
+            Log.w(TAG, "release: TaskView still attached to a parent");
+            return;
+        }
+        if (mPool.size() < mPoolSize) {
+            mPool.add(taskView);
+        }
+    }
+
+    /**
+     * 内存紧张时丢弃复用池中的卡片，下次预加载时再补足
+     */
+    public void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mPool.clear();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.newland.recents.views;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import com.newland.recents.model.Task;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 卡片标题的文字布局缓存，以标题和可用宽度为键。
+ * 布局在后台线程中创建，卡片绑定时直接取用，主线程不做文字测量；
+ * 任务列表或卡片尺寸变化时预先为所有任务创建。
+ * 除后台创建外，所有方法都在主线程调用。
+ */
+class TitleLayoutCache {
+
+    private static final int MAX_ENTRIES = 64;
+
+    interface Callback {
+        /** 在主线程中调用 */
+        void onTitleLayoutReady(Layout layout);
+    }
+
+    private static final class TitleKey {
+        final String title;
+        final int width;
+
+        TitleKey(CharSequence title, int width) {
+            this.title = title != null ? title.toString() : "";
+            this.width = width;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof TitleKey)) return false;
+            TitleKey other = (TitleKey) obj;
+            return width == other.width && title.equals(other.title);
+        }
+
+        @Override
+        public int hashCode() {
+            return title.hashCode() * 31 + width;
+        }
+    }
+
+    private static TitleLayoutCache sInstance;
+
+    // 标题画笔的副本，不与主线程绘制共用
+    private final TextPaint mPaint;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<TitleKey, Layout> mCache = new LruCache<>(MAX_ENTRIES);
+    private final Map<TitleKey, List<Callback>> mPending = new HashMap<>();
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "TitleLayoutLoader");
+        }
+    });
+
+    private TitleLayoutCache(TaskCardPainter painter) {
+        mPaint = new TextPaint(painter.getTitlePaint());
+    }
+
+    static synchronized TitleLayoutCache getInstance(TaskCardPainter painter) {
+        if (sInstance == null) {
+            sInstance = new TitleLayoutCache(painter);
+        }
+        return sInstance;
+    }
+
+    Layout get(CharSequence title, int width) {
+        return mCache.get(new TitleKey(title, width));
+    }
+
+    /**
+     * 在后台创建标题布局，完成后在主线程回调；callback可以为null，只用于预取
+     */
+    void request(CharSequence title, int width, Callback callback) {
+        final TitleKey key = new TitleKey(title, width);
+        Layout layout = mCache.get(key);
+        if (layout != null) {
+            if (callback != null) {
+                callback.onTitleLayoutReady(layout);
+            }
+            return;
+        }
+        List<Callback> callbacks = mPending.get(key);
+        if (callbacks != null) {
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            return;
+        }
+        callbacks = new ArrayList<>();
+        if (callback != null) {
+            callbacks.add(callback);
+        }
+        mPending.put(key, callbacks);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // 布局会持有画笔并在主线程绘制，每个布局使用自己的画笔
+                final Layout result = TaskCardPainter.createTitleLayout(key.title, key.width,
+                        new TextPaint(mPaint));
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCache.put(key, result);
+                        List<Callback> waiting = mPending.remove(key);
+                        if (waiting == null) return;
+                        for (Callback waitingCallback : waiting) {
+                            waitingCallback.onTitleLayoutReady(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 预先为一组任务的标题创建布局
+     */
+    void prefetch(List<Task> tasks, int width) {
+        if (width <= 0) return;
+        for (Task task : tasks) {
+            request(task.title, width, null);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.newland.recents;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 显示和隐藏状态机的单元测试，用假的时钟和定时器代替Handler
+ */
+public class RecentsStateMachineTest {
+
+    private FakeCallbacks mCallbacks;
+    private FakeScheduler mScheduler;
+    private RecentsStateMachine mMachine;
+
+    @Before
+    public void setUp() {
+        mCallbacks = new FakeCallbacks();
+        mScheduler = new FakeScheduler();
+        mMachine = new RecentsStateMachine(mCallbacks, mScheduler);
+    }
+
+    @Test
+    public void showDuringShowing_isDropped() {
+        mMachine.show();
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+
+        mMachine.show();
+        mMachine.show();
+        assertEquals(1, mCallbacks.showCount);
+
+        mMachine.onShown();
+        assertEquals(RecentsStateMachine.STATE_VISIBLE, mMachine.getState());
+        assertEquals(1, mCallbacks.showCount);
+        assertEquals(0, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void hideDuringShowing_runsAfterShown() {
+        mMachine.show();
+        mMachine.hide();
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+        assertEquals(0, mCallbacks.hideCount);
+
+        mMachine.onShown();
+        assertEquals(RecentsStateMachine.STATE_HIDING, mMachine.getState());
+        assertEquals(1, mCallbacks.hideCount);
+
+        mMachine.onHidden();
+        assertEquals(RecentsStateMachine.STATE_HIDDEN, mMachine.getState());
+    }
+
+    @Test
+    public void hideThenShowDuringShowing_cancelOut() {
+        mMachine.show();
+        mMachine.hide();
+        mMachine.show();
+
+        mMachine.onShown();
+        assertEquals(RecentsStateMachine.STATE_VISIBLE, mMachine.getState());
+        assertEquals(1, mCallbacks.showCount);
+        assertEquals(0, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void startShowFails_returnsToHidden() {
+        mCallbacks.startShowResult = false;
+        mMachine.show();
+        assertEquals(RecentsStateMachine.STATE_HIDDEN, mMachine.getState());
+        assertTrue(mScheduler.mPending.isEmpty());
+
+        mCallbacks.startShowResult = true;
+        mMachine.show();
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+        assertEquals(2, mCallbacks.showCount);
+    }
+
+    @Test
+    public void toggleBurstWithinDebounce_isIgnored() {
+        assertTrue(mMachine.toggle());
+        mMachine.onShown();
+
+        mScheduler.advance(100);
+        assertFalse(mMachine.toggle());
+        mScheduler.advance(RecentsStateMachine.TOGGLE_DEBOUNCE_MS - 101);
+        assertFalse(mMachine.toggle());
+
+        assertEquals(RecentsStateMachine.STATE_VISIBLE, mMachine.getState());
+        assertEquals(1, mCallbacks.showCount);
+        assertEquals(0, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void toggleAfterDebounce_hides() {
+        assertTrue(mMachine.toggle());
+        mMachine.onShown();
+
+        mScheduler.advance(RecentsStateMachine.TOGGLE_DEBOUNCE_MS);
+        assertTrue(mMachine.toggle());
+        assertEquals(RecentsStateMachine.STATE_HIDING, mMachine.getState());
+        assertEquals(1, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void toggleAfterDebounceDuringShowing_hidesWhenShown() {
+        assertTrue(mMachine.toggle());
+
+        mScheduler.advance(RecentsStateMachine.TOGGLE_DEBOUNCE_MS);
+        assertTrue(mMachine.toggle());
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+        assertEquals(0, mCallbacks.hideCount);
+
+        mMachine.onShown();
+        assertEquals(RecentsStateMachine.STATE_HIDING, mMachine.getState());
+        assertEquals(1, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void showTimeout_recoversToHidden() {
+        mMachine.show();
+        mScheduler.advance(RecentsStateMachine.TRANSITION_TIMEOUT_MS - 1);
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+
+        mScheduler.advance(1);
+        assertEquals(RecentsStateMachine.STATE_HIDDEN, mMachine.getState());
+        assertEquals(1, mCallbacks.timeoutCount);
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mCallbacks.timedOutState);
+
+        mMachine.show();
+        assertEquals(RecentsStateMachine.STATE_SHOWING, mMachine.getState());
+        assertEquals(2, mCallbacks.showCount);
+    }
+
+    @Test
+    public void showTimeoutWhileUiShowing_appliesPendingHide() {
+        mMachine.show();
+        mMachine.hide();
+        mCallbacks.uiShowing = true;
+
+        mScheduler.advance(RecentsStateMachine.TRANSITION_TIMEOUT_MS);
+        assertEquals(RecentsStateMachine.STATE_HIDING, mMachine.getState());
+        assertEquals(1, mCallbacks.hideCount);
+    }
+
+    @Test
+    public void hideTimeout_recoversToHidden() {
+        mMachine.show();
+        mMachine.onShown();
+        mMachine.hide();
+        assertEquals(RecentsStateMachine.STATE_HIDING, mMachine.getState());
+
+        mScheduler.advance(RecentsStateMachine.TRANSITION_TIMEOUT_MS);
+        assertEquals(RecentsStateMachine.STATE_HIDDEN, mMachine.getState());
+        assertEquals(RecentsStateMachine.STATE_HIDING, mCallbacks.timedOutState);
+    }
+
+    @Test
+    public void timeout_isCancelledWhenShown() {
+        mMachine.show();
+        mScheduler.advance(1000);
+        mMachine.onShown();
+
+        mScheduler.advance(RecentsStateMachine.TRANSITION_TIMEOUT_MS);
+        assertEquals(RecentsStateMachine.STATE_VISIBLE, mMachine.getState());
+        assertEquals(0, mCallbacks.timeoutCount);
+    }
+
+    private static class FakeCallbacks implements RecentsStateMachine.Callbacks {
+        int showCount;
+        int hideCount;
+        int timeoutCount;
+        int timedOutState = -1;
+        boolean startShowResult = true;
+        boolean uiShowing;
+
+        @Override
+        public boolean startShow() {
+            showCount++;
+            return startShowResult;
+        }
+
+        @Override
+        public void startHide() {
+            hideCount++;
+        }
+
+        @Override
+        public boolean isUiShowing() {
+            return uiShowing;
+        }
+
+        @Override
+        public void onTransitionTimedOut(int state) {
+            timeoutCount++;
+            timedOutState = state;
+        }
+    }
+
+    private static class FakeScheduler implements RecentsStateMachine.Scheduler {
+        private long mNow = 1000;
+        private final List<Runnable> mPending = new ArrayList<>();
+        private final List<Long> mPendingTimes = new ArrayList<>();
+
+        @Override
+        public long uptimeMillis() {
+            return mNow;
+        }
+
+        @Override
+        public void postDelayed(Runnable runnable, long delayMs) {
+            mPending.add(runnable);
+            mPendingTimes.add(mNow + delayMs);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable runnable) {
+            for (int i = mPending.size() - 1; i >= 0; i--) {
+                if (mPending.get(i) == runnable) {
+                    mPending.remove(i);
+                    mPendingTimes.remove(i);
+                }
+            }
+        }
+
+        /**
+         * 时钟前进ms，依次执行到期的任务
+         */
+        void advance(long ms) {
+            long target = mNow + ms;
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < mPending.size(); i++) {
+                    if (mPendingTimes.get(i) <= target
+                            && (next < 0 || mPendingTimes.get(i) < mPendingTimes.get(next))) {
+                        next = i;
+                    }
+                }
+                if (next < 0) break;
+                mNow = mPendingTimes.remove(next);
+                mPending.remove(next).run();
+            }
+            mNow = target;
+        }
+    }
+}